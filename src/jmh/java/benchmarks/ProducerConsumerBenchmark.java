@@ -0,0 +1,110 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contended producers against a consumer sharing one queue.
+ * <p>
+ * Both groups default to one thread; the producer-to-consumer ratio is chosen at run time with
+ * {@code -tg <producers>,1} (JMH orders group members by method name, so producers, {@code offer}, come first).
+ * {@link QueueBenchmarkRunner} runs the 1/2/4/8/16 ratios.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ProducerConsumerBenchmark {
+
+    private static final Integer ITEM = 42;
+    private static final int DRAIN_BATCH = 64;
+
+    @Param({"ConcurrentMostRecentlyInsertedQueue", "MostRecentlyInsertedBlockingQueue",
+            "StripedMostRecentlyInsertedQueue", "ArrayBlockingQueue"})
+    public QueueType type;
+
+    @Param({"16", "1024", "65536"})
+    public int capacity;
+
+    private Queue<Integer> queue;
+    private QueueType.Drain<Integer> drain;
+
+    @Setup(Level.Trial)
+    public void createQueue() {
+        if (!type.isThreadSafe()) throw new IllegalStateException(type + " cannot be shared between threads");
+        if (!type.isBounded()) throw new IllegalStateException(type + " would grow without bound");
+
+        queue = type.create(capacity);
+        drain = type.drainOf(queue);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        /**
+         * Offers rejected because the queue was full (always zero for evicting queues, which drop their head instead).
+         */
+        public long rejected;
+        /**
+         * Polls which found the queue empty.
+         */
+        public long empty;
+    }
+
+    @State(Scope.Thread)
+    public static class DrainSink {
+        final List<Integer> items = new ArrayList<>(DRAIN_BATCH);
+    }
+
+    @Benchmark
+    @Group("offerPoll")
+    public void offer(Counters counters) {
+        counters.rejected += type.offerEvicting(queue, ITEM);
+    }
+
+    @Benchmark
+    @Group("offerPoll")
+    public Integer poll(Counters counters) {
+        Integer item = queue.poll();
+        if (item == null) {
+            counters.empty++;
+        }
+        return item;
+    }
+
+    @Benchmark
+    @Group("offerDrain")
+    public void offerWhileDraining(Counters counters) {
+        offer(counters);
+    }
+
+    @Benchmark
+    @Group("offerDrain")
+    public int pollDrainTo(Counters counters, DrainSink sink) {
+        int drained = drain.drainTo(sink.items, DRAIN_BATCH);
+        if (drained == 0) {
+            counters.empty++;
+        }
+        sink.items.clear();
+        return drained;
+    }
+}
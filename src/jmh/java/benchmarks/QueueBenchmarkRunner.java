@@ -0,0 +1,46 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the whole suite with the GC profiler (gc.alloc.rate, gc.alloc.rate.norm) and writes one JSON result file per
+ * run, so that throughput regressions can be gated on by comparing files between releases.
+ * <p>
+ * Usage: {@code QueueBenchmarkRunner [resultDirectory]}, {@code build/reports/jmh} by default.
+ */
+public class QueueBenchmarkRunner {
+
+    private static final int[] PRODUCERS_PER_CONSUMER = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args) throws RunnerException {
+        File resultDirectory = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        if (!resultDirectory.isDirectory() && !resultDirectory.mkdirs()) {
+            throw new IllegalStateException("Cannot create " + resultDirectory);
+        }
+
+        new Runner(options(SingleThreadedQueueBenchmark.class, resultDirectory, "single-threaded.json")
+                .build()).run();
+
+        for (int producers : PRODUCERS_PER_CONSUMER) {
+            String resultFile = "producer-consumer-" + producers + "to1.json";
+            new Runner(options(ProducerConsumerBenchmark.class, resultDirectory, resultFile)
+                    .threadGroups(producers, 1)
+                    .build()).run();
+        }
+    }
+
+    private static ChainedOptionsBuilder options(Class<?> benchmark, File resultDirectory, String resultFile) {
+        return new OptionsBuilder()
+                .include(benchmark.getName())
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(resultDirectory, resultFile).getPath());
+    }
+}
@@ -0,0 +1,134 @@
+package benchmarks;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Queue implementations under benchmark.
+ * <p>
+ * The most-recently-inserted queues live in the default package, which cannot be imported from a named package (and
+ * JMH refuses benchmarks in the default package), so they are instantiated reflectively during setup. The measured
+ * code only goes through the {@link Queue} and {@link java.util.concurrent.BlockingQueue} interfaces.
+ */
+public enum QueueType {
+
+    MostRecentlyInsertedQueue(true, true, false),
+    ConcurrentMostRecentlyInsertedQueue(true, true, true),
+    MostRecentlyInsertedBlockingQueue(true, true, true),
+    StripedMostRecentlyInsertedQueue(true, true, true),
+    ArrayBlockingQueue(false, true, true),
+    ConcurrentLinkedQueue(false, false, true);
+
+    private final boolean evicting;
+    private final boolean bounded;
+    private final boolean threadSafe;
+
+    QueueType(boolean evicting, boolean bounded, boolean threadSafe) {
+        this.evicting = evicting;
+        this.bounded = bounded;
+        this.threadSafe = threadSafe;
+    }
+
+    /**
+     * Moves elements out of a queue in batches.
+     */
+    public interface Drain<E> {
+        int drainTo(Collection<? super E> c, int maxElements);
+    }
+
+    /**
+     * Unbounded queues never fill up, so producers outrunning their consumer would only grow them; they cannot take
+     * part in the contended benchmarks.
+     */
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public boolean isThreadSafe() {
+        return threadSafe;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <E> Queue<E> create(int capacity) {
+        switch (this) {
+            case ArrayBlockingQueue:
+                return new ArrayBlockingQueue<>(capacity);
+            case ConcurrentLinkedQueue:
+                return new ConcurrentLinkedQueue<>();
+            default:
+                try {
+                    return (Queue<E>) Class.forName(name()).getConstructor(int.class).newInstance(capacity);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot create " + name(), e);
+                }
+        }
+    }
+
+    /**
+     * Offers {@code e} to a queue of this type with most-recently-inserted semantics: queues which reject on full get
+     * their head removed first, so every implementation does the same amount of work on the evict-on-full path.
+     * Unbounded queues, which never reject, get their head removed after the offer, so a queue filled up to its
+     * capacity stays there.
+     *
+     * @return the number of rejected offers
+     */
+    public <E> int offerEvicting(Queue<E> queue, E e) {
+        if (evicting) {
+            queue.offer(e);
+            return 0;
+        }
+        if (!bounded) {
+            queue.offer(e);
+            queue.poll();
+            return 0;
+        }
+
+        int rejected = 0;
+        while (!queue.offer(e)) {
+            queue.poll();
+            rejected++;
+        }
+        return rejected;
+    }
+
+    /**
+     * Returns the {@code drainTo(Collection, int)} of {@code queue}: the one of {@link BlockingQueue}, or the public
+     * method of the striped queue, bound through a lambda so that the call is as direct as in a typed caller. Queues
+     * without one are polled in a loop.
+     */
+    @SuppressWarnings("unchecked")
+    public <E> Drain<E> drainOf(Queue<E> queue) {
+        if (queue instanceof BlockingQueue) {
+            return ((BlockingQueue<E>) queue)::drainTo;
+        }
+        if (this == StripedMostRecentlyInsertedQueue) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                MethodType signature = MethodType.methodType(int.class, Collection.class, int.class);
+                CallSite site = LambdaMetafactory.metafactory(lookup, "drainTo",
+                        MethodType.methodType(Drain.class, queue.getClass()), signature,
+                        lookup.findVirtual(queue.getClass(), "drainTo", signature), signature);
+                return (Drain<E>) site.getTarget().invoke(queue);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot bind drainTo of " + name(), e);
+            }
+        }
+
+        return (c, maxElements) -> {
+            int drained = 0;
+            E item;
+            while (drained < maxElements && (item = queue.poll()) != null) {
+                c.add(item);
+                drained++;
+            }
+            return drained;
+        };
+    }
+}
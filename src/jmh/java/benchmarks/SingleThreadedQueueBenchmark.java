@@ -0,0 +1,99 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uncontended cost of the basic operations of every queue, including the unsynchronized MostRecentlyInsertedQueue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SingleThreadedQueueBenchmark {
+
+    private static final Integer ITEM = 42;
+
+    @Param({"MostRecentlyInsertedQueue", "ConcurrentMostRecentlyInsertedQueue", "MostRecentlyInsertedBlockingQueue",
+            "StripedMostRecentlyInsertedQueue", "ArrayBlockingQueue", "ConcurrentLinkedQueue"})
+    public QueueType type;
+
+    @Param({"16", "1024", "65536"})
+    public int capacity;
+
+    private Queue<Integer> queue;
+    private QueueType.Drain<Integer> drain;
+    private Queue<Integer> fullQueue;
+    private List<Integer> sink;
+
+    @Setup(Level.Trial)
+    public void createQueues() {
+        queue = type.create(capacity);
+        drain = type.drainOf(queue);
+        fullQueue = type.create(capacity);
+        sink = new ArrayList<>(capacity);
+    }
+
+    @Setup(Level.Iteration)
+    public void fillQueues() {
+        queue.clear();
+        fullQueue.clear();
+        for (int i = 0; i < capacity; i++) {
+            fullQueue.offer(i);
+        }
+    }
+
+    /**
+     * One element in, one element out: the steady state of a queue which never fills up.
+     */
+    @Benchmark
+    public Integer offerPoll() {
+        queue.offer(ITEM);
+        return queue.poll();
+    }
+
+    /**
+     * Offer into a full queue: evicting queues drop their head, the JDK queues get it removed explicitly.
+     */
+    @Benchmark
+    public void offerEvict() {
+        type.offerEvicting(fullQueue, ITEM);
+    }
+
+    @Benchmark
+    public Integer peek() {
+        return fullQueue.peek();
+    }
+
+    /**
+     * Refill the whole window and move it out again, through the queue's drainTo() when it has one and a poll() loop
+     * otherwise.
+     */
+    @Benchmark
+    public void fillAndDrain(Blackhole blackhole) {
+        for (int i = 0; i < capacity; i++) {
+            queue.offer(ITEM);
+        }
+
+        blackhole.consume(drain.drainTo(sink, Integer.MAX_VALUE));
+        sink.clear();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Sizes a {@link Resizable} queue from its {@link QueueMetrics}, meant to be run periodically, e.g. with
+ * {@link java.util.concurrent.ScheduledExecutorService#scheduleAtFixedRate}.
+ * <p>
+ * Every run looks at the offers and evictions since the previous run. When more than {@code growEvictionRate} of
+ * the offers evicted an element, the capacity is doubled. When the queue never held more than {@code shrinkUsage} of
+ * its capacity, as sampled by {@code shrinkAfterRuns} runs in a row, the capacity is halved. The capacity always stays
+ * within {@code [minCapacity, maxCapacity]}, and {@code maxCapacity} cannot exceed {@link Resizable#maxCapacity()}.
+ */
+public class AdaptiveCapacityPolicy implements Runnable {
+
+    private static final double DEFAULT_GROW_EVICTION_RATE = 0.01;
+    private static final double DEFAULT_SHRINK_USAGE = 0.25;
+    private static final int DEFAULT_SHRINK_AFTER_RUNS = 10;
+
+    private final Resizable queue;
+    private final QueueMetrics metrics;
+    private final int minCapacity;
+    private final int maxCapacity;
+    private final double growEvictionRate;
+    private final double shrinkUsage;
+    private final int shrinkAfterRuns;
+
+    private long lastOffers;
+    private long lastEvictions;
+    // consecutive runs which found the queue underused, and its largest size over them
+    private int underusedRuns;
+    private int peakSize;
+
+    public AdaptiveCapacityPolicy(Resizable queue, QueueMetrics metrics, int minCapacity, int maxCapacity) {
+        this(queue, metrics, minCapacity, maxCapacity, DEFAULT_GROW_EVICTION_RATE, DEFAULT_SHRINK_USAGE,
+                DEFAULT_SHRINK_AFTER_RUNS);
+    }
+
+    /**
+     * @param growEvictionRate the ratio of evictions to offers above which the capacity is doubled
+     * @param shrinkUsage      the ratio of size to capacity under which the queue counts as underused
+     * @param shrinkAfterRuns  the number of runs in a row the queue must be underused before the capacity is halved
+     */
+    public AdaptiveCapacityPolicy(Resizable queue, QueueMetrics metrics, int minCapacity, int maxCapacity,
+                                  double growEvictionRate, double shrinkUsage, int shrinkAfterRuns) {
+        if (queue == null || metrics == null) throw new NullPointerException();
+        if (minCapacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (maxCapacity < minCapacity) {
+            throw new IllegalArgumentException("Max capacity cant be lower than min capacity");
+        }
+        // checked up front, since an exception thrown by a periodic run silently cancels it
+        if (maxCapacity > queue.maxCapacity()) {
+            throw new IllegalArgumentException("Max capacity cant be greater than max capacity of the queue");
+        }
+        if (!(growEvictionRate >= 0 && growEvictionRate <= 1)) {
+            throw new IllegalArgumentException("Eviction rate must be between 0 and 1");
+        }
+        if (!(shrinkUsage >= 0 && shrinkUsage <= 1)) {
+            throw new IllegalArgumentException("Usage must be between 0 and 1");
+        }
+        if (shrinkAfterRuns <= 0) throw new IllegalArgumentException("Number of runs must be positive");
+
+        this.queue = queue;
+        this.metrics = metrics;
+        this.minCapacity = minCapacity;
+        this.maxCapacity = maxCapacity;
+        this.growEvictionRate = growEvictionRate;
+        this.shrinkUsage = shrinkUsage;
+        this.shrinkAfterRuns = shrinkAfterRuns;
+        this.lastOffers = metrics.getOfferCount();
+        this.lastEvictions = metrics.getEvictionCount();
+    }
+
+    @Override
+    public synchronized void run() {
+        long offers = metrics.getOfferCount();
+        long evictions = metrics.getEvictionCount();
+        long offered = offers - lastOffers;
+        long evicted = evictions - lastEvictions;
+        lastOffers = offers;
+        lastEvictions = evictions;
+
+        int capacity = queue.capacity();
+
+        if (offered != 0 && evicted > offered * growEvictionRate) {
+            underusedRuns = 0;
+            resize(capacity, (int) Math.min(maxCapacity, 2L * capacity));
+            return;
+        }
+
+        int size = metrics.getSize();
+        if (size > capacity * shrinkUsage) {
+            underusedRuns = 0;
+            return;
+        }
+
+        peakSize = (underusedRuns == 0) ? size : Math.max(peakSize, size);
+        if (++underusedRuns >= shrinkAfterRuns) {
+            underusedRuns = 0;
+            resize(capacity, Math.max(minCapacity, Math.max(capacity / 2, peakSize)));
+        }
+    }
+
+    private void resize(int capacity, int newCapacity) {
+        if (newCapacity != capacity) {
+            queue.setCapacity(newCapacity);
+        }
+    }
+}
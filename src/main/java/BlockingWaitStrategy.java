@@ -0,0 +1,96 @@
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks consumers on a {@link Condition}. Cheap for consumers which wait a lot, at the price of a wake-up latency of
+ * several microseconds.
+ * <p>
+ * Waiters are counted, and producers skip the lock and the signal entirely while nobody is parked. A consumer
+ * registers itself before checking the condition and a producer publishes before reading the count, so one of them
+ * always sees the other.
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private volatile int waiters;
+
+    @Override
+    public void await(BooleanSupplier condition) throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+
+        lock.lockInterruptibly();
+        try {
+            ++waiters;
+            try {
+                while (!condition.getAsBoolean()) {
+                    available.await();
+                }
+            } catch (InterruptedException exception) {
+                // pass a signal this thread may have consumed on to another waiter
+                available.signal();
+                throw exception;
+            } finally {
+                --waiters;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long awaitNanos(BooleanSupplier condition, long nanos) throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+
+        lock.lockInterruptibly();
+        try {
+            ++waiters;
+            try {
+                while (!condition.getAsBoolean() && nanos > 0) {
+                    nanos = available.awaitNanos(nanos);
+                }
+                return nanos;
+            } catch (InterruptedException exception) {
+                available.signal();
+                throw exception;
+            } finally {
+                --waiters;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signal() {
+        if (waiters == 0) {
+            return;
+        }
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signalAll() {
+        if (waiters == 0) {
+            return;
+        }
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Most-recently-inserted ring written once and read by any number of independent {@link Reader}s, each with its own
+ * cursor, instead of one destructive queue per subsystem.
+ * <p>
+ * Producers never wait for readers: publishing costs the same whatever the number of readers, and the oldest element
+ * is simply overwritten when the ring is full. Every slot records the sequence of the element it holds and readers
+ * validate it around their read, so a reader which got lapped notices it, jumps to the oldest element still in the
+ * ring and adds the skipped elements to {@link Reader#missed()}.
+ * <p>
+ * Readers wait for new elements through the {@link WaitStrategy} given at construction; the default
+ * {@link BlockingWaitStrategy} only makes producers signal while some reader is parked.
+ */
+public class BroadcastMostRecentlyInsertedQueue<E> {
+
+    public static final int DEFAULT_CAPACITY = 10;
+
+    // slot sequence while a producer overwrites the slot
+    private static final long WRITING = -1;
+
+    private final int capacity;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final WaitStrategy waitStrategy;
+    // sequence of the next element to publish, i.e. the number of elements published so far
+    private volatile long cursor;
+
+    public BroadcastMostRecentlyInsertedQueue(int capacity) {
+        this(capacity, new BlockingWaitStrategy());
+    }
+
+    public BroadcastMostRecentlyInsertedQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BroadcastMostRecentlyInsertedQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (waitStrategy == null) throw new NullPointerException();
+
+        this.capacity = capacity;
+        this.items = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        this.waitStrategy = waitStrategy;
+
+        for (int i = 0; i < capacity; i++) {
+            sequences.lazySet(i, WRITING);
+        }
+    }
+
+    private int getRealIndex(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    /**
+     * Publishes {@code e} to every reader, overwriting the oldest element when the ring is full.
+     */
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            long sequence = cursor;
+            int index = getRealIndex(sequence);
+
+            // invalidate the slot first, so that a reader of the overwritten element cannot validate the new one
+            sequences.set(index, WRITING);
+            items.set(index, e);
+            sequences.set(index, sequence);
+            cursor = sequence + 1;
+        } finally {
+            lock.unlock();
+        }
+
+        waitStrategy.signalAll();
+        return true;
+    }
+
+    public void put(E e) {
+        offer(e);
+    }
+
+    /**
+     * @return the sequence the next published element will get
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of elements held by the ring, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(cursor, capacity);
+    }
+
+    /**
+     * Creates a reader starting at the oldest element still in the ring.
+     */
+    public Reader newReader() {
+        return new Reader(Math.max(0, cursor - capacity));
+    }
+
+    /**
+     * Creates a reader starting at {@code sequence}; a sequence already overwritten counts as missed on the first
+     * read.
+     */
+    public Reader newReader(long sequence) {
+        if (sequence < 0) throw new IllegalArgumentException("Sequence cant be lower than zero");
+
+        return new Reader(sequence);
+    }
+
+    /**
+     * Independent cursor over the ring. A reader is meant to be used by one thread at a time.
+     */
+    public final class Reader {
+
+        private long nextSequence;
+        private long missed;
+        private final BooleanSupplier available = () -> nextSequence < cursor;
+
+        private Reader(long nextSequence) {
+            this.nextSequence = nextSequence;
+        }
+
+        /**
+         * @return the next element for this reader, or null if it has read everything published so far
+         */
+        public E poll() {
+            for (; ; ) {
+                long sequence = nextSequence;
+                long published = cursor;
+
+                if (sequence >= published) {
+                    return null;
+                }
+
+                if (published - sequence <= capacity) {
+                    int index = getRealIndex(sequence);
+
+                    if (sequences.get(index) == sequence) {
+                        E result = items.get(index);
+                        if (sequences.get(index) == sequence) {
+                            nextSequence = sequence + 1;
+                            return result;
+                        }
+                    }
+                }
+
+                // lapped: jump to the oldest element still in the ring; should its slot be in the middle of being
+                // overwritten, the next round notices and jumps again
+                long oldest = Math.max(sequence + 1, cursor - capacity);
+                missed += oldest - sequence;
+                nextSequence = oldest;
+            }
+        }
+
+        /**
+         * Waits for the next element for this reader.
+         */
+        public E take() throws InterruptedException {
+            E result;
+
+            while ((result = poll()) == null) {
+                waitStrategy.await(available);
+            }
+
+            return result;
+        }
+
+        /**
+         * Waits up to {@code timeout} for the next element for this reader.
+         *
+         * @return the element, or null if none was published in time
+         */
+        public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            E result;
+
+            while ((result = poll()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = waitStrategy.awaitNanos(available, nanos);
+            }
+
+            return result;
+        }
+
+        /**
+         * Moves up to {@code maxItems} of the elements this reader has not read yet into {@code c}.
+         *
+         * @return the number of elements moved
+         */
+        public int drainTo(Collection<? super E> c, int maxItems) {
+            if (c == null) throw new NullPointerException();
+
+            int transferred = 0;
+            E item;
+
+            while (transferred < maxItems && (item = poll()) != null) {
+                c.add(item);
+                ++transferred;
+            }
+
+            return transferred;
+        }
+
+        /**
+         * @return the sequence of the next element this reader will return
+         */
+        public long getSequence() {
+            return nextSequence;
+        }
+
+        /**
+         * @return how many elements were overwritten before this reader got to them, since it was created
+         */
+        public long missed() {
+            return missed;
+        }
+
+        /**
+         * @return how many published elements this reader has not read yet, including ones already overwritten
+         */
+        public long lag() {
+            return Math.max(0, cursor - nextSequence);
+        }
+    }
+}
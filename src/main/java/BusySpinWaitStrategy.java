@@ -0,0 +1,11 @@
+/**
+ * Spins on the condition without ever giving up the core. Gives the lowest hand-off latency, but only makes sense for
+ * consumers pinned to a core of their own.
+ */
+public class BusySpinWaitStrategy extends SpinningWaitStrategy {
+
+    @Override
+    protected void idle(int iteration) {
+        Thread.onSpinWait();
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Result of {@link MostRecentlyInsertedBlockingQueue#readSince(long, Object[])}: how many elements were copied, the
+ * sequence to read from next time, and how many sequences in between were skipped because their elements had already
+ * left the window, polled, evicted, expired or removed.
+ */
+public final class CatchUp {
+
+    private final int count;
+    private final long nextSequence;
+    private final long missed;
+
+    CatchUp(int count, long nextSequence, long missed) {
+        this.count = count;
+        this.nextSequence = nextSequence;
+        this.missed = missed;
+    }
+
+    /**
+     * @return the number of elements copied
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sequence to pass to the next call to catch up from where this one stopped
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return the number of sequences below {@link #getNextSequence()}, from the one asked for, whose elements could
+     * not be copied since they were no longer in the window
+     */
+    public long getMissed() {
+        return missed;
+    }
+
+    public boolean hasGap() {
+        return missed != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "CatchUp{count=" + count + ", nextSequence=" + nextSequence + ", missed=" + missed + "}";
+    }
+}
@@ -0,0 +1,205 @@
+import java.lang.invoke.VarHandle;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free multi-producer/multi-consumer variant of {@link IntMostRecentlyInsertedQueue}, using the same per-slot
+ * sequence scheme as {@link ConcurrentMostRecentlyInsertedQueue}.
+ * <p>
+ * Values live in a plain {@code int[]}: a producer writes its slot before publishing the slot sequence with a release
+ * store, and a consumer reads it after the acquiring load of that sequence, so no boxing and no allocation happens.
+ */
+public class ConcurrentIntMostRecentlyInsertedQueue {
+
+    private final int capacity;
+    // length of the ring, at least 2: with a single slot the sequence published for a position would be the one
+    // telling the producer of the next lap that the slot is free
+    private final int slots;
+    private final int[] items;
+    private final AtomicLongArray sequences;
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    public ConcurrentIntMostRecentlyInsertedQueue(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+
+        this.capacity = capacity;
+        this.slots = Math.max(2, capacity);
+        this.items = new int[slots];
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.lazySet(i, i);
+        }
+    }
+
+    private int getRealIndex(long position) {
+        return (int) (position % slots);
+    }
+
+    public boolean offer(int e) {
+        for (; ; ) {
+            long t = tail.get();
+
+            // a ring longer than the capacity has free slots past it, so the capacity is checked separately
+            if (capacity < slots && t - head.get() >= capacity) {
+                evict();
+                continue;
+            }
+
+            int index = getRealIndex(t);
+            long sequence = sequences.get(index);
+
+            if (sequence == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    items[index] = e;
+                    sequences.lazySet(index, t + 1);
+                    return true;
+                }
+            } else if (sequence < t) {
+                if (t - head.get() >= slots) {
+                    evict();
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+
+    private void evict() {
+        long h = claimHead();
+        if (h >= 0) {
+            consume(h);
+        }
+    }
+
+    /**
+     * @return the oldest value
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int poll() {
+        long h = claimHead();
+        if (h < 0) throw new NoSuchElementException();
+
+        return consume(h);
+    }
+
+    public int pollOrDefault(int defaultValue) {
+        long h = claimHead();
+
+        return (h < 0) ? defaultValue : consume(h);
+    }
+
+    /**
+     * Claims the head position. Its slot stays owned by the caller until {@link #consume(long)} releases it.
+     *
+     * @return the claimed position, or -1 if the queue is empty
+     */
+    private long claimHead() {
+        for (; ; ) {
+            long h = head.get();
+            long sequence = sequences.get(getRealIndex(h));
+
+            if (sequence == h + 1) {
+                if (head.compareAndSet(h, h + 1)) {
+                    return h;
+                }
+            } else if (sequence < h + 1) {
+                if (tail.get() == h) {
+                    return -1;
+                }
+                // a producer has claimed the head position but not published it yet
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private int consume(long position) {
+        int index = getRealIndex(position);
+        int result = items[index];
+
+        sequences.lazySet(index, position + slots);
+
+        return result;
+    }
+
+    /**
+     * @return the oldest value, without removing it
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public int peek() {
+        return peek(true, 0);
+    }
+
+    public int peekOrDefault(int defaultValue) {
+        return peek(false, defaultValue);
+    }
+
+    private int peek(boolean throwIfEmpty, int defaultValue) {
+        for (; ; ) {
+            long h = head.get();
+            int index = getRealIndex(h);
+            long sequence = sequences.get(index);
+
+            if (sequence == h + 1) {
+                int result = items[index];
+                // the slot cannot be reused before the head moves on, so an unchanged head validates the read
+                VarHandle.acquireFence();
+                if (head.get() == h) {
+                    return result;
+                }
+            } else if (sequence < h + 1) {
+                if (tail.get() == h) {
+                    if (throwIfEmpty) throw new NoSuchElementException();
+                    return defaultValue;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    public int drainTo(int[] dst) {
+        return drainTo(dst, 0, dst.length);
+    }
+
+    /**
+     * Moves up to {@code maxElements} values, oldest first, into {@code dst} starting at {@code offset}.
+     *
+     * @return the number of values moved
+     */
+    public int drainTo(int[] dst, int offset, int maxElements) {
+        if (dst == null) throw new NullPointerException();
+        if (offset < 0 || maxElements < 0 || maxElements > dst.length - offset) throw new IndexOutOfBoundsException();
+
+        int transferred = 0;
+        long h;
+
+        while (transferred < maxElements && (h = claimHead()) >= 0) {
+            dst[offset + transferred++] = consume(h);
+        }
+
+        return transferred;
+    }
+
+    public int size() {
+        for (; ; ) {
+            long h = head.get();
+            long t = tail.get();
+
+            if (head.get() == h) {
+                long size = t - h;
+                return (int) Math.max(0, Math.min(size, capacity));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        long h;
+        while ((h = claimHead()) >= 0) {
+            consume(h);
+        }
+    }
+}
@@ -1,46 +1,581 @@
+import java.util.AbstractQueue;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public class ConcurrentMostRecentlyInsertedQueue<E> extends MostRecentlyInsertedQueue<E> {
+/**
+ * Lock-free multi-producer/multi-consumer variant of {@link MostRecentlyInsertedQueue}.
+ * <p>
+ * Every slot of the ring carries a sequence number which tells whether the slot is free for the producer of a given
+ * position or holds an element ready for the consumer of that position. Producers and consumers claim positions by
+ * CAS on the padded {@code tail} and {@code head} counters. A producer which finds its slot still occupied by the
+ * previous lap while the ring is full evicts the head with {@link #poll()} and retries, so no lock is ever taken.
+ * <p>
+ * The iterator is weakly consistent and does not support removal.
+ * <p>
+ * {@link #enableMetrics(String)} turns on counting of offers, polls and evictions, exposed over JMX. Independently,
+ * the queue emits flight recorder events, named after {@link #getName()}, for eviction bursts and
+ * {@link #pollInto(Object[], int, int)} batches; they cost nothing unless a recording enables them.
+ * <p>
+ * The ring is allocated once, for the max capacity given at construction, and {@link #setCapacity(int)} only moves
+ * the limit within it, so resizing never copies nor stops producers. While the limit is below the max capacity,
+ * concurrent producers can exceed it by up to one element each until the next offer.
+ * <p>
+ * With an {@link OverflowTier} set, evicted elements are spilled to it instead of being dropped, which only stages
+ * them without a lock, and {@link #history(int)} reads the newest elements across both tiers.
+ */
+public class ConcurrentMostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements Resizable {
+
+    private final int maxCapacity;
+    // length of the ring, at least 2: with a single slot the sequence published for a position would be the one
+    // telling the producer of the next lap that the slot is free
+    private final int slots;
+    // number of elements kept, at most maxCapacity
+    private volatile int capacity;
+    private final AtomicReferenceArray<E> items;
+    private final AtomicLongArray sequences;
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+    // null unless metrics are enabled
+    private volatile QueueStatistics metrics;
+    private volatile String name;
+    // evictions since the last consumption, counted only while eviction burst events are recorded
+    private final PaddedAtomicLong burstEvictions = new PaddedAtomicLong();
+    private volatile long burstStart;
+    // null unless evicted elements are spilled
+    private volatile OverflowTier<E> overflow;
 
     public ConcurrentMostRecentlyInsertedQueue(int capacity) {
-        super(capacity);
+        this(capacity, capacity);
+    }
+
+    /**
+     * @param maxCapacity the capacity {@link #setCapacity(int)} can grow the queue to
+     */
+    public ConcurrentMostRecentlyInsertedQueue(int capacity, int maxCapacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (maxCapacity < capacity) throw new IllegalArgumentException("Max capacity cant be lower than capacity");
+
+        this.maxCapacity = maxCapacity;
+        this.slots = Math.max(2, maxCapacity);
+        this.capacity = capacity;
+        this.items = new AtomicReferenceArray<>(slots);
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.lazySet(i, i);
+        }
+        this.name = getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    /**
+     * @return the name of the queue in flight recorder events
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        if (name == null) throw new NullPointerException();
+
+        this.name = name;
+    }
+
+    private void recordEvictionBurst(int evicted) {
+        if (!QueueEvents.isRecorderInitialized()) {
+            return;
+        }
+
+        // checked within this method, so that the event is scalar-replaced while it is not enabled
+        EvictionBurstEvent event = new EvictionBurstEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long total = burstEvictions.addAndGet(evicted);
+        if (total == evicted) {
+            burstStart = now;
+        }
+
+        // only the producer resetting the counter commits the burst
+        if (total >= EvictionBurstEvent.BURST_SIZE && burstEvictions.compareAndSet(total, 0)) {
+            QueueEvents.commitEvictionBurst(event, total, now - burstStart, name, capacity, size());
+        }
+    }
+
+    // evictions are only counted while the event is enabled, so a plain read is enough to skip the reset
+    private void endEvictionBurst() {
+        if (burstEvictions.get() != 0) {
+            burstEvictions.set(0);
+        }
+    }
+
+    private int getRealIndex(long position) {
+        return (int) (position % slots);
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int maxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * Moves the limit of the queue to {@code capacity}, evicting its oldest elements if it holds more.
+     *
+     * @throws IllegalArgumentException if {@code capacity} is greater than the max capacity
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (capacity > maxCapacity) throw new IllegalArgumentException("Capacity cant be greater than max capacity");
+
+        this.capacity = capacity;
+
+        int excess;
+        while ((excess = size() - capacity) > 0) {
+            int evicted = evict(excess);
+            if (evicted == 0) {
+                break;
+            }
+
+            final QueueStatistics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordEvictions(evicted);
+            }
+            recordEvictionBurst(evicted);
+        }
+    }
+
+    /**
+     * Spills the elements evicted from now on to {@code overflow}, or drops them again if it is null.
+     */
+    public void setOverflowTier(OverflowTier<E> overflow) {
+        this.overflow = overflow;
+    }
+
+    /**
+     * @return the tier evicted elements are spilled to, or null if they are dropped
+     */
+    public OverflowTier<E> getOverflowTier() {
+        return overflow;
+    }
+
+    /**
+     * Starts recording {@link QueueMetrics}, registered on the platform MBean server under {@code name}. Without
+     * metrics, recording costs a null check per operation.
+     *
+     * @return the metrics of this queue
+     */
+    public synchronized QueueMetrics enableMetrics(String name) {
+        disableMetrics();
+        metrics = QueueStatistics.register(this, name, this::capacity, this::size);
+
+        return metrics;
+    }
+
+    public synchronized void disableMetrics() {
+        QueueStatistics metrics = this.metrics;
+
+        if (metrics != null) {
+            metrics.unregister();
+            this.metrics = null;
+        }
+    }
+
+    /**
+     * @return the metrics of this queue, or null if they are not enabled
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
     public boolean offer(E e) {
-        if (e == null) {
-            throw new NullPointerException();
+        if (e == null) throw new NullPointerException();
+
+        for (; ; ) {
+            long t = tail.get();
+
+            // below the length of the ring there are free slots past the limit, so the limit is checked separately
+            if (capacity < slots && t - head.get() >= capacity) {
+                evict();
+                continue;
+            }
+
+            int index = getRealIndex(t);
+            long sequence = sequences.get(index);
+
+            if (sequence == t) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    items.lazySet(index, e);
+                    sequences.lazySet(index, t + 1);
+
+                    final QueueStatistics metrics = this.metrics;
+                    if (metrics != null) {
+                        metrics.recordOffers(1, (int) Math.min(t + 1 - head.get(), capacity));
+                    }
+                    return true;
+                }
+            } else if (sequence < t) {
+                // the slot still belongs to the previous lap: either the ring is full and the head must be evicted,
+                // or a consumer has already claimed the head and is about to release the slot
+                if (t - head.get() >= slots) {
+                    evict();
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+
+    private void evict() {
+        E evicted = dequeue();
+
+        if (evicted != null) {
+            final OverflowTier<E> overflow = this.overflow;
+            if (overflow != null) {
+                overflow.spill(evicted);
+            }
+
+            final QueueStatistics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordEvictions(1);
+            }
+            recordEvictionBurst(1);
+        }
+    }
+
+    @Override
+    public E poll() {
+        E result = dequeue();
+
+        if (result != null) {
+            final QueueStatistics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordPolls(1);
+            }
+            endEvictionBurst();
         }
 
-        synchronized (this) {
-            insertItem(e);
-            return true;
+        return result;
+    }
+
+    private E dequeue() {
+        for (; ; ) {
+            long h = head.get();
+            int index = getRealIndex(h);
+            long sequence = sequences.get(index);
+
+            if (sequence == h + 1) {
+                if (head.compareAndSet(h, h + 1)) {
+                    E result = items.get(index);
+
+                    items.lazySet(index, null);
+                    sequences.lazySet(index, h + slots);
+
+                    return result;
+                }
+            } else if (sequence < h + 1) {
+                if (tail.get() == h) {
+                    return null;
+                }
+                // a producer has claimed the head position but not published it yet
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Offers {@code len} elements of {@code src} starting at {@code off}, claiming runs of free slots with a single CAS
+     * on {@code tail}. Room for the batch is made by evicting as many elements as needed with a single CAS on
+     * {@code head}, and of a batch larger than the capacity only the newest {@code capacity} elements are offered,
+     * since the others would be evicted by the batch itself anyway.
+     */
+    public void offerAll(E[] src, int off, int len) {
+        MostRecentlyInsertedQueue.checkBatch(src, off, len);
+
+        final int capacity = this.capacity;
+        final int start = off;
+        int dropped = Math.max(0, len - capacity);
+        off += dropped;
+        len -= dropped;
+
+        while (len > 0) {
+            long t = tail.get();
+            int free = (int) Math.max(0, capacity - (t - head.get()));
+
+            if (free == 0) {
+                int evicted = evict(len);
+
+                final QueueStatistics metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.recordEvictions(evicted);
+                }
+                if (evicted != 0) {
+                    recordEvictionBurst(evicted);
+                }
+                continue;
+            }
+
+            int batch = Math.min(len, free);
+            int claimable = 0;
+            while (claimable < batch && sequences.get(getRealIndex(t + claimable)) == t + claimable) {
+                ++claimable;
+            }
+
+            if (claimable == 0) {
+                Thread.onSpinWait();
+            } else if (tail.compareAndSet(t, t + claimable)) {
+                // nobody else can claim positions past t, so every slot seen free is still free
+                for (int i = 0; i < claimable; i++) {
+                    int index = getRealIndex(t + i);
+                    items.lazySet(index, src[off + i]);
+                    sequences.lazySet(index, t + i + 1);
+                }
+                off += claimable;
+                len -= claimable;
+
+                final QueueStatistics metrics = this.metrics;
+                if (metrics != null) {
+                    metrics.recordOffers(claimable, (int) Math.min(t + claimable - head.get(), capacity));
+                }
+            }
+        }
+
+        // the prefix of the batch left out counts as offered and evicted after the window it pushed out
+        if (dropped != 0) {
+            final QueueStatistics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordOffers(dropped, capacity);
+                metrics.recordEvictions(dropped);
+            }
+            recordEvictionBurst(dropped);
         }
+
+        final OverflowTier<E> overflow = this.overflow;
+        if (overflow != null) {
+            overflow.spillAll(src, start, dropped);
+        }
+    }
+
+    // Drops up to max elements from the head, spilling them if there is an overflow tier
+    private int evict(int max) {
+        final OverflowTier<E> overflow = this.overflow;
+
+        if (overflow == null) {
+            return transfer(null, 0, max);
+        }
+
+        E[] evicted = (E[]) new Object[max];
+        int transferred = transfer(evicted, 0, max);
+        overflow.spillAll(evicted, 0, transferred);
+
+        return transferred;
+    }
+
+    /**
+     * Moves up to {@code max} elements, oldest first, into {@code dst} starting at {@code off}, claiming the run of
+     * published slots at the head with a single CAS.
+     *
+     * @return the number of elements moved
+     */
+    public int pollInto(E[] dst, int off, int max) {
+        if (dst == null) throw new NullPointerException();
+        if (off < 0 || max < 0 || max > dst.length - off) throw new IndexOutOfBoundsException();
+
+        int transferred = transfer(dst, off, max);
+
+        final QueueStatistics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordPolls(transferred);
+        }
+
+        if (transferred != 0) {
+            endEvictionBurst();
+            QueueEvents.commitDrain(transferred, name, capacity, size());
+        }
+
+        return transferred;
+    }
+
+    /**
+     * Claims the run of published slots at the head, up to {@code max} of them, and copies their elements into
+     * {@code dst}, or just drops them when {@code dst} is null.
+     */
+    private int transfer(E[] dst, int off, int max) {
+        while (max > 0) {
+            long h = head.get();
+            int available = 0;
+            while (available < max && sequences.get(getRealIndex(h + available)) == h + available + 1) {
+                ++available;
+            }
+
+            if (available == 0) {
+                if (tail.get() == h) {
+                    return 0;
+                }
+                Thread.onSpinWait();
+            } else if (head.compareAndSet(h, h + available)) {
+                for (int i = 0; i < available; i++) {
+                    int index = getRealIndex(h + i);
+                    if (dst != null) {
+                        dst[off + i] = items.get(index);
+                    }
+                    items.lazySet(index, null);
+                    sequences.lazySet(index, h + i + slots);
+                }
+                return available;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) throw new IllegalArgumentException();
+
+        E[] batch = (E[]) c.toArray();
+        offerAll(batch, 0, batch.length);
+
+        return batch.length > 0;
+    }
+
+    @Override
+    public E peek() {
+        for (; ; ) {
+            long h = head.get();
+            int index = getRealIndex(h);
+            long sequence = sequences.get(index);
+
+            if (sequence == h + 1) {
+                E result = items.get(index);
+                if (head.get() == h) {
+                    return result;
+                }
+            } else if (sequence < h + 1) {
+                if (tail.get() == h) {
+                    return null;
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Returns up to the {@code k} newest elements, oldest of them first: a copy of the window, preceded by the most
+     * recently evicted elements when it holds fewer than {@code k} and an {@link OverflowTier} is set. The tiers are
+     * read one after the other, so an element evicted meanwhile may show up in both.
+     */
+    public List<E> history(int k) {
+        if (k < 0) throw new IllegalArgumentException("Number of elements cant be lower than zero");
+
+        final OverflowTier<E> overflow = this.overflow;
+        Object[] window = toArray();
+        Object[] hot = Arrays.copyOfRange(window, Math.max(0, window.length - k), window.length);
+
+        return OverflowTier.history(overflow, (List<E>) Arrays.asList(hot), k);
     }
 
     @Override
-    public synchronized E poll() {
-        return super.poll();
+    public int size() {
+        for (; ; ) {
+            long h = head.get();
+            long t = tail.get();
+
+            if (head.get() == h) {
+                long size = t - h;
+                return (int) Math.max(0, Math.min(size, maxCapacity));
+            }
+        }
     }
 
     @Override
-    public synchronized E peek() {
-        return super.peek();
+    public boolean isEmpty() {
+        return size() == 0;
     }
 
+    /**
+     * Splits a copy of the window, taken like {@link #iterator()} traverses it, so the spliterator is exactly sized
+     * whatever producers and consumers do meanwhile.
+     */
     @Override
-    public synchronized boolean addAll(Collection<? extends E> c) {
-        return super.addAll(c);
+    public Spliterator<E> spliterator() {
+        Object[] snapshot = toArray();
+
+        return new RingSpliterator<>(snapshot, 0, snapshot.length);
     }
 
+    // Weakly consistent: elements polled or evicted concurrently are skipped
     @Override
-    public synchronized void clear() {
-        while (poll() != null) ;
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private long position = head.get();
+            private E nextItem = advance();
+
+            @Override
+            public boolean hasNext() {
+                return nextItem != null;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                E result = nextItem;
+                nextItem = advance();
+
+                return result;
+            }
+
+            private E advance() {
+                for (; ; ) {
+                    if (position >= tail.get()) {
+                        return null;
+                    }
+
+                    int index = getRealIndex(position);
+                    long sequence = sequences.get(index);
+
+                    if (sequence == position + 1) {
+                        E item = items.get(index);
+                        if (item != null && sequences.get(index) == position + 1) {
+                            ++position;
+                            return item;
+                        }
+                    }
+
+                    long h = head.get();
+                    if (sequence > position + 1 || h > position) {
+                        // the slot has already been consumed or overwritten
+                        position = Math.max(position + 1, h);
+                    } else {
+                        // not published yet
+                        return null;
+                    }
+                }
+            }
+        };
     }
 
     @Override
-    public synchronized int size() {
-        return super.size();
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (E item : this) {
+            sb.append(item).append(" ");
+        }
+
+        return sb.toString();
     }
 
 }
@@ -0,0 +1,473 @@
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Blocking most-recently-inserted queue holding at most one element per key, for feeds publishing many updates of the
+ * same entity: offering an element whose key is already in the window replaces the older element in place, keeping
+ * its position, instead of queueing a stale version next to the new one and evicting distinct keys.
+ * <p>
+ * Keys are extracted from the elements by the function given at construction and must not be null. An open-addressing
+ * hash index, probed linearly and sized to at least twice the capacity, maps every key in the window to its slot in the
+ * ring, so offer, poll and eviction stay O(1). Removed keys are deleted by shifting back the entries probed after them,
+ * so the index never fills up with tombstones.
+ * <p>
+ * The iterator works on a copy of the window taken under the lock.
+ */
+public class ConflatingMostRecentlyInsertedQueue<K, E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private final int capacity;
+    private final Function<? super E, ? extends K> keyExtractor;
+    private final E[] items;
+    // key and spread hash code of the element in the same slot
+    private final Object[] keys;
+    private final int[] hashes;
+    // slot of a key plus one, zero when the entry is free
+    private final int[] index;
+    private final int mask;
+    private int takeIndex;
+    private int putIndex;
+    // volatile so that waiting consumers can check it without the lock
+    private volatile int currentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> currentSize != 0;
+
+    public ConflatingMostRecentlyInsertedQueue(int capacity, Function<? super E, ? extends K> keyExtractor) {
+        this(capacity, keyExtractor, new BlockingWaitStrategy());
+    }
+
+    public ConflatingMostRecentlyInsertedQueue(int capacity, Function<? super E, ? extends K> keyExtractor,
+                                               WaitStrategy waitStrategy) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (capacity > 1 << 29) throw new IllegalArgumentException("Size of queue is too large");
+        if (keyExtractor == null || waitStrategy == null) throw new NullPointerException();
+
+        this.capacity = capacity;
+        this.keyExtractor = keyExtractor;
+        this.waitStrategy = waitStrategy;
+        this.items = (E[]) new Object[capacity];
+        this.keys = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.index = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        this.mask = index.length - 1;
+    }
+
+    private int getRealIndex(int i) {
+        return (++i == capacity) ? 0 : i;
+    }
+
+    private static int spread(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    // Position of key in the index, or the complement of the free position where it would go
+    private int find(Object key, int hash) {
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+
+            if (slot < 0) {
+                return ~i;
+            }
+            if (hashes[slot] == hash && key.equals(keys[slot])) {
+                return i;
+            }
+        }
+    }
+
+    // Position in the index of the key held in slot
+    private int positionOf(int slot) {
+        for (int i = hashes[slot] & mask; ; i = (i + 1) & mask) {
+            if (index[i] - 1 == slot) {
+                return i;
+            }
+        }
+    }
+
+    // Frees the index entry at position, shifting back the entries probed after it which could not be found otherwise
+    private void deleteAt(int position) {
+        int hole = position;
+
+        for (int i = (position + 1) & mask; ; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (slot < 0) {
+                break;
+            }
+
+            int home = hashes[slot] & mask;
+            // the entry may fill the hole unless its home lies between the hole and it, cyclically
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                index[hole] = index[i];
+                hole = i;
+            }
+        }
+
+        index[hole] = 0;
+    }
+
+    private K keyOf(E e) {
+        K key = keyExtractor.apply(e);
+        if (key == null) throw new NullPointerException("Key of element cant be null");
+
+        return key;
+    }
+
+    // Key of an object which may not be an element at all, or null when it cannot have one in the window
+    private K keyOfObject(Object o) {
+        try {
+            return keyExtractor.apply((E) o);
+        } catch (ClassCastException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the element with the same key if the window holds one, otherwise inserts {@code e} at the tail,
+     * evicting the head when the queue is full.
+     */
+    @Override
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+
+        K key = keyOf(e);
+        int hash = spread(key);
+        boolean inserted;
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            inserted = insertItem(e, key, hash);
+        } finally {
+            lock.unlock();
+        }
+
+        // a replacement cannot make the queue non-empty
+        if (inserted) {
+            waitStrategy.signal();
+        }
+        return true;
+    }
+
+    private boolean insertItem(E e, K key, int hash) {
+        int position = find(key, hash);
+
+        if (position >= 0) {
+            items[index[position] - 1] = e;
+            return false;
+        }
+
+        if (currentSize == capacity) {
+            dequeue();
+            // the eviction may have shifted the free position
+            position = find(key, hash);
+        }
+
+        items[putIndex] = e;
+        keys[putIndex] = key;
+        hashes[putIndex] = hash;
+        index[~position] = putIndex + 1;
+        putIndex = getRealIndex(putIndex);
+        ++currentSize;
+
+        return true;
+    }
+
+    private E dequeue() {
+        E result = items[takeIndex];
+
+        deleteAt(positionOf(takeIndex));
+        items[takeIndex] = null;
+        keys[takeIndex] = null;
+        --currentSize;
+        takeIndex = getRealIndex(takeIndex);
+
+        return result;
+    }
+
+    @Override
+    public void put(E e) {
+        offer(e);
+    }
+
+    /**
+     * The queue always accepts new elements, so this never waits.
+     */
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    public E poll() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return (currentSize == 0) ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+
+        while (true) {
+            lock.lockInterruptibly();
+            try {
+                if (currentSize != 0) {
+                    return dequeue();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            waitStrategy.await(notEmpty);
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+
+        while (true) {
+            lock.lockInterruptibly();
+            try {
+                if (currentSize != 0) {
+                    return dequeue();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (nanos <= 0) {
+                return null;
+            }
+            nanos = waitStrategy.awaitNanos(notEmpty, nanos);
+        }
+    }
+
+    @Override
+    public E peek() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return items[takeIndex];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the element with this key in the window, or null if there is none
+     */
+    public E get(K key) {
+        if (key == null) throw new NullPointerException();
+
+        int hash = spread(key);
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            int position = find(key, hash);
+            return (position < 0) ? null : items[index[position] - 1];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) return false;
+
+        K key = keyOfObject(o);
+        if (key == null) return false;
+
+        int hash = spread(key);
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            int position = find(key, hash);
+            return position >= 0 && o.equals(items[index[position] - 1]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes {@code o} if it is the element of its key in the window, closing the gap by moving the newer elements
+     * back one slot.
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) return false;
+
+        K key = keyOfObject(o);
+        if (key == null) return false;
+
+        int hash = spread(key);
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            int position = find(key, hash);
+            if (position < 0) {
+                return false;
+            }
+
+            int slot = index[position] - 1;
+            if (!o.equals(items[slot])) {
+                return false;
+            }
+
+            deleteAt(position);
+            for (int next = getRealIndex(slot); next != putIndex; slot = next, next = getRealIndex(next)) {
+                index[positionOf(next)] = slot + 1;
+                items[slot] = items[next];
+                keys[slot] = keys[next];
+                hashes[slot] = hashes[next];
+            }
+
+            items[slot] = null;
+            keys[slot] = null;
+            putIndex = slot;
+            --currentSize;
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) throw new NullPointerException();
+        if (c == this) throw new IllegalArgumentException();
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            int transferred = 0;
+
+            while (transferred < maxElements && currentSize != 0) {
+                c.add(dequeue());
+                ++transferred;
+            }
+            return transferred;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can ideally (in the absence of memory or
+     * resource constraints) accept without blocking, or Integer.MAX_VALUE if there is no intrinsic limit.
+     *
+     * @return the remaining capacity
+     */
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int size() {
+        return currentSize;
+    }
+
+    @Override
+    public void clear() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            Arrays.fill(items, null);
+            Arrays.fill(keys, null);
+            Arrays.fill(hashes, 0);
+            Arrays.fill(index, 0);
+            takeIndex = 0;
+            putIndex = 0;
+            currentSize = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            Object[] copy = new Object[currentSize];
+            int firstSegment = Math.min(currentSize, capacity - takeIndex);
+
+            System.arraycopy(items, takeIndex, copy, 0, firstSegment);
+            System.arraycopy(items, 0, copy, firstSegment, currentSize - firstSegment);
+
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        Object[] snapshot = toArray();
+
+        return new RingSpliterator<>(snapshot, 0, snapshot.length);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private final Object[] snapshot = toArray();
+            private int cursor;
+            private E lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return cursor < snapshot.length;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                lastReturned = (E) snapshot[cursor++];
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) throw new IllegalStateException();
+
+                ConflatingMostRecentlyInsertedQueue.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+}
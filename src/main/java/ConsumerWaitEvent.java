@@ -0,0 +1,16 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("queues.ConsumerWait")
+@Label("Queue Consumer Wait")
+@Category("Queues")
+@Description("Consumer waiting longer than the threshold for an element in take or poll with timeout")
+@Threshold("20 ms")
+final class ConsumerWaitEvent extends QueueEvent {
+
+    @Label("Timed Out")
+    boolean timedOut;
+}
@@ -0,0 +1,241 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link MostRecentlyInsertedBlockingQueue} specialized for {@code double} values, backed by a {@code double[]} ring so that
+ * no operation boxes or allocates.
+ * <p>
+ * Offering never blocks: when the queue is full the oldest value is evicted. Consumers block in {@link #take()} and
+ * {@link #pollOrDefault(long, TimeUnit, double)} until a value is available.
+ */
+public class DoubleMostRecentlyInsertedBlockingQueue {
+
+    public static final int DEFAULT_CAPACITY = 10;
+
+    private final int capacity;
+    private int currentSize;
+    private final double[] items;
+    private int takeIndex;
+    private int putIndex;
+    private final ReentrantLock lock;
+    private final Condition notEmpty;
+
+    public DoubleMostRecentlyInsertedBlockingQueue(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        this.items = new double[capacity];
+        this.capacity = capacity;
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+    }
+
+    public DoubleMostRecentlyInsertedBlockingQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    private int getRealIndex(int i) {
+        return (++i == items.length) ? 0 : i;
+    }
+
+    private void insertItem(double e) {
+        if (currentSize >= capacity) {
+            extract();
+        }
+
+        items[putIndex] = e;
+        putIndex = getRealIndex(putIndex);
+        ++currentSize;
+        notEmpty.signal();
+    }
+
+    private double extract() {
+        double result = items[takeIndex];
+
+        --currentSize;
+        takeIndex = getRealIndex(takeIndex);
+
+        return result;
+    }
+
+    public boolean offer(double e) {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            insertItem(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(double e) {
+        offer(e);
+    }
+
+    /**
+     * @return the oldest value
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public double poll() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            if (currentSize == 0) throw new NoSuchElementException();
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double pollOrDefault(double defaultValue) {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return (currentSize == 0) ? defaultValue : extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to {@code timeout} for a value.
+     *
+     * @return the oldest value, or {@code defaultValue} if none arrived in time
+     */
+    public double pollOrDefault(long timeout, TimeUnit unit, double defaultValue) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if (currentSize != 0) {
+                    return extract();
+                }
+
+                if (nanos <= 0) {
+                    return defaultValue;
+                }
+
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notEmpty.signal();
+                    throw ie;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double take() throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+
+        lock.lockInterruptibly();
+        try {
+            try {
+                while (currentSize == 0) {
+                    notEmpty.await();
+                }
+            } catch (InterruptedException exception) {
+                notEmpty.signal();
+                throw exception;
+            }
+            return extract();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the oldest value, without removing it
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public double peek() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            if (currentSize == 0) throw new NoSuchElementException();
+            return items[takeIndex];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double peekOrDefault(double defaultValue) {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return (currentSize == 0) ? defaultValue : items[takeIndex];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int drainTo(double[] dst) {
+        return drainTo(dst, 0, dst.length);
+    }
+
+    /**
+     * Moves up to {@code maxElements} values, oldest first, into {@code dst} starting at {@code offset}, copying at
+     * most two contiguous segments of the ring under one lock hold.
+     *
+     * @return the number of values moved
+     */
+    public int drainTo(double[] dst, int offset, int maxElements) {
+        if (dst == null) throw new NullPointerException();
+        if (offset < 0 || maxElements < 0 || maxElements > dst.length - offset) throw new IndexOutOfBoundsException();
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            int transferred = (maxElements < currentSize) ? maxElements : currentSize;
+            int firstSegment = Math.min(transferred, items.length - takeIndex);
+
+            System.arraycopy(items, takeIndex, dst, offset, firstSegment);
+            System.arraycopy(items, 0, dst, offset + firstSegment, transferred - firstSegment);
+
+            takeIndex = (takeIndex + transferred) % items.length;
+            currentSize -= transferred;
+
+            return transferred;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return currentSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            takeIndex = putIndex;
+            currentSize = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
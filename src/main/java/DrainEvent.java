@@ -0,0 +1,16 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("queues.Drain")
+@Label("Queue Drain")
+@Category("Queues")
+@Description("Batch of elements moved out of a queue by drainTo or pollInto")
+@StackTrace(false)
+final class DrainEvent extends QueueEvent {
+
+    @Label("Drained")
+    int drained;
+}
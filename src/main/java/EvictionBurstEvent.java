@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Committed every {@link #BURST_SIZE} evictions of a full queue which happen without any element being consumed in
+ * between; its duration field tells how fast producers were overrunning consumers.
+ */
+@Name("queues.EvictionBurst")
+@Label("Eviction Burst")
+@Category("Queues")
+@Description("Elements evicted from a full queue with no poll in between")
+@StackTrace(false)
+final class EvictionBurstEvent extends QueueEvent {
+
+    static final int BURST_SIZE = 64;
+
+    @Label("Evicted")
+    long evicted;
+
+    @Label("Burst Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long burstDuration;
+}
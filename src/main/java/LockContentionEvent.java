@@ -0,0 +1,13 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("queues.LockContention")
+@Label("Queue Lock Acquisition")
+@Category("Queues")
+@Description("Acquisition of a queue lock taking longer than the threshold")
+@Threshold("1 ms")
+final class LockContentionEvent extends QueueEvent {
+}
@@ -0,0 +1,132 @@
+import java.util.NoSuchElementException;
+
+/**
+ * {@link MostRecentlyInsertedQueue} specialized for {@code long} values.
+ * <p>
+ * Values are kept in a {@code long[]} ring, so offering, polling, peeking and draining neither box nor allocate.
+ * Polling or peeking an empty queue throws {@link NoSuchElementException}; the {@code OrDefault} variants return a
+ * caller supplied value instead.
+ */
+public class LongMostRecentlyInsertedQueue {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    private final int capacity;
+    private int currentSize;
+    private final long[] items;
+    private int takeIndex;
+    private int putIndex;
+
+    public LongMostRecentlyInsertedQueue(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+
+        this.items = new long[capacity];
+        this.capacity = capacity;
+    }
+
+    public LongMostRecentlyInsertedQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    private int getRealIndex(int i) {
+        return (++i == items.length) ? 0 : i;
+    }
+
+    public boolean offer(long e) {
+        insertItem(e);
+
+        return true;
+    }
+
+    protected void insertItem(long e) {
+        if (currentSize >= capacity) {
+            poll();
+        }
+
+        items[putIndex] = e;
+        putIndex = getRealIndex(putIndex);
+        ++currentSize;
+    }
+
+    /**
+     * @return the oldest value
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public long poll() {
+        if (currentSize == 0) throw new NoSuchElementException();
+
+        long x = items[takeIndex];
+
+        takeIndex = getRealIndex(takeIndex);
+        --currentSize;
+
+        return x;
+    }
+
+    public long pollOrDefault(long defaultValue) {
+        return (currentSize == 0) ? defaultValue : poll();
+    }
+
+    /**
+     * @return the oldest value, without removing it
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public long peek() {
+        if (currentSize == 0) throw new NoSuchElementException();
+
+        return items[takeIndex];
+    }
+
+    public long peekOrDefault(long defaultValue) {
+        return (currentSize == 0) ? defaultValue : items[takeIndex];
+    }
+
+    public int drainTo(long[] dst) {
+        return drainTo(dst, 0, dst.length);
+    }
+
+    /**
+     * Moves up to {@code maxElements} values, oldest first, into {@code dst} starting at {@code offset}.
+     *
+     * @return the number of values moved
+     */
+    public int drainTo(long[] dst, int offset, int maxElements) {
+        if (dst == null) throw new NullPointerException();
+        if (offset < 0 || maxElements < 0 || maxElements > dst.length - offset) throw new IndexOutOfBoundsException();
+
+        int transferred = (maxElements < currentSize) ? maxElements : currentSize;
+        int firstSegment = Math.min(transferred, items.length - takeIndex);
+
+        System.arraycopy(items, takeIndex, dst, offset, firstSegment);
+        System.arraycopy(items, 0, dst, offset + firstSegment, transferred - firstSegment);
+
+        takeIndex = (takeIndex + transferred) % items.length;
+        currentSize -= transferred;
+
+        return transferred;
+    }
+
+    public int size() {
+        return currentSize;
+    }
+
+    public boolean isEmpty() {
+        return currentSize == 0;
+    }
+
+    public void clear() {
+        takeIndex = putIndex;
+        currentSize = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0, index = takeIndex; i < currentSize; i++, index = getRealIndex(index)) {
+            sb.append(items[index]).append(" ");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link MostRecentlyInsertedQueue} whose ring lives in a memory-mapped file instead of the heap, so that the window
+ * survives a restart: reopening the file restores the last {@code capacity} elements without replaying anything.
+ * <p>
+ * The file starts with a header holding the capacity, the record size, the head index and the size, followed by
+ * {@code capacity} fixed-size records written by a {@link RecordCodec}. The head index and the size are updated
+ * together by a single 8-byte write and the tail index is derived from them, so a crash cannot leave indexes which
+ * disagree. A record is always written before the header publishes it, so a crash can lose at most the element being
+ * offered. Call {@link #force()} to flush the mapping to
+ * the storage device.
+ * <p>
+ * Like {@link MostRecentlyInsertedQueue} this class is not thread-safe.
+ */
+public class MappedMostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements Closeable {
+
+    private static final int MAGIC = 0x4D524951;
+    private static final int VERSION = 2;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    // the head index in the high half, the size in the low half
+    private static final int INDEXES_OFFSET = 16;
+    private static final int HEADER_SIZE = 32;
+
+    private final int capacity;
+    private final int recordSize;
+    private final RecordCodec<E> codec;
+    private final MappedByteBuffer buffer;
+    // a record is encoded here first, so that a codec writing too much fails before touching the file
+    private final ByteBuffer record;
+    private int currentSize;
+    private int takeIndex;
+    private int putIndex;
+
+    /**
+     * Opens the queue stored in {@code file}, creating the file if it does not exist yet.
+     *
+     * @throws IOException if the file cannot be mapped or was created with another capacity or record size
+     */
+    public MappedMostRecentlyInsertedQueue(Path file, int capacity, RecordCodec<E> codec) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (codec == null) throw new NullPointerException();
+
+        this.capacity = capacity;
+        this.codec = codec;
+        this.recordSize = codec.recordSize();
+
+        if (recordSize <= 0) throw new IllegalArgumentException("Record size must be positive");
+
+        this.record = ByteBuffer.allocate(recordSize);
+
+        long fileSize = HEADER_SIZE + (long) capacity * recordSize;
+        if (fileSize > Integer.MAX_VALUE) throw new IllegalArgumentException("Queue does not fit in one mapping");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean created = channel.size() == 0;
+
+            if (!created && channel.size() != fileSize) {
+                throw new IOException(file + " has " + channel.size() + " bytes, expected " + fileSize
+                        + " for capacity " + capacity + " and record size " + recordSize);
+            }
+
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+            if (created) {
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                buffer.putInt(VERSION_OFFSET, VERSION);
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putInt(RECORD_SIZE_OFFSET, recordSize);
+                writeIndexes();
+            } else {
+                readHeader(file);
+            }
+        }
+    }
+
+    private void readHeader(Path file) throws IOException {
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            throw new IOException(file + " is not a queue file");
+        }
+        if (buffer.getInt(CAPACITY_OFFSET) != capacity || buffer.getInt(RECORD_SIZE_OFFSET) != recordSize) {
+            throw new IOException(file + " was created with capacity " + buffer.getInt(CAPACITY_OFFSET)
+                    + " and record size " + buffer.getInt(RECORD_SIZE_OFFSET));
+        }
+
+        long indexes = buffer.getLong(INDEXES_OFFSET);
+        takeIndex = (int) (indexes >>> 32);
+        currentSize = (int) indexes;
+
+        if (takeIndex < 0 || takeIndex >= capacity || currentSize < 0 || currentSize > capacity) {
+            throw new IOException(file + " has a corrupted header");
+        }
+        putIndex = (int) (((long) takeIndex + currentSize) % capacity);
+    }
+
+    private void writeIndexes() {
+        buffer.putLong(INDEXES_OFFSET, ((long) takeIndex << 32) | (currentSize & 0xFFFFFFFFL));
+    }
+
+    private int getRealIndex(int i) {
+        return (++i == capacity) ? 0 : i;
+    }
+
+    private E read(int index) {
+        buffer.position(HEADER_SIZE + index * recordSize);
+        return codec.decode(buffer);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+
+        insertItem(e);
+
+        return true;
+    }
+
+    protected void insertItem(E e) {
+        record.clear();
+        try {
+            codec.encode(e, record);
+        } catch (BufferOverflowException ex) {
+            throw new IllegalStateException("Codec wrote more than " + recordSize + " bytes", ex);
+        }
+        record.flip();
+
+        if (currentSize >= capacity) {
+            takeIndex = getRealIndex(takeIndex);
+            --currentSize;
+            writeIndexes();
+        }
+
+        buffer.position(HEADER_SIZE + putIndex * recordSize);
+        buffer.put(record);
+
+        putIndex = getRealIndex(putIndex);
+        ++currentSize;
+        writeIndexes();
+    }
+
+    @Override
+    public E poll() {
+        if (currentSize == 0) {
+            return null;
+        }
+
+        E x = read(takeIndex);
+
+        takeIndex = getRealIndex(takeIndex);
+        --currentSize;
+        writeIndexes();
+
+        return x;
+    }
+
+    @Override
+    public E peek() {
+        return (currentSize == 0) ? null : read(takeIndex);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int nextIndex = takeIndex;
+            private int remaining = currentSize;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                E result = read(nextIndex);
+                nextIndex = getRealIndex(nextIndex);
+                --remaining;
+
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return currentSize;
+    }
+
+    @Override
+    public void clear() {
+        takeIndex = putIndex;
+        currentSize = 0;
+        writeIndexes();
+    }
+
+    /**
+     * Writes any change of the mapped ring through to the storage device.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Forces the ring to disk. The mapping itself is released once the queue is garbage collected.
+     */
+    @Override
+    public void close() {
+        force();
+    }
+}
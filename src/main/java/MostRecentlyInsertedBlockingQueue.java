@@ -1,238 +1,1589 @@
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
 
-public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+/**
+ * Thread-safe, blocking {@link MostRecentlyInsertedQueue}: offering never blocks and evicts the oldest element when
+ * the queue is full, while consumers wait for elements in {@link #take()} and {@link #poll(long, TimeUnit)}.
+ * <p>
+ * How consumers wait is decided by the {@link WaitStrategy} given at construction, {@link BlockingWaitStrategy} by
+ * default. Consumers wait outside the queue lock and producers signal after releasing it, and only when the strategy
+ * has a consumer parked.
+ * <p>
+ * {@link #size()}, {@link #peek()}, {@link #peekLast()}, {@link #snapshot(Object[])},
+ * {@link #copyLatest(Object[], int)} and {@link #latest(int)} never take the lock: every mutation bumps a version
+ * counter to an odd value before touching the ring and to an even one afterwards, and readers copy optimistically,
+ * retrying when the version moved under them. Readers which keep losing against a busy producer fall back to the lock
+ * after a few attempts, so they cannot starve.
+ * <p>
+ * Elements may also expire after a maximum age, as in {@link MostRecentlyInsertedQueue}: expired heads are discarded
+ * under the lock by offers, polls and drains, consumers never receive them, and the lock-free readers skip them;
+ * {@link #size()} may still count them until then.
+ * <p>
+ * {@link #takeAsync()} and {@link #pollAsync(long, TimeUnit)} wait without a thread: they register a future which
+ * the next offered element completes directly, outside the lock. A future cancelled or timed out in the meantime is
+ * skipped and the element goes to the next waiter or into the queue, so no element is lost.
+ * <p>
+ * {@link #enableMetrics(String)} turns on counting of offers, polls, evictions and expirations, and histograms of
+ * consumer wait and lock hold times, exposed over JMX. Independently, the queue emits flight recorder events, named
+ * after {@link #getName()}, for eviction bursts, lock acquisitions and consumer waits over their thresholds, and drain
+ * batches; they cost nothing unless a recording enables them.
+ * <p>
+ * {@link #setCapacity(int)} resizes the queue in place, holding the lock only to copy the window.
+ * <p>
+ * {@link #enableIndex()} makes {@link #contains(Object)} and locating the element of {@link #remove(Object)} O(1),
+ * at the cost of a hash map update per element inserted or removed. Removing an element from the middle of the window
+ * closes the gap by moving the shorter side of the window over it.
+ * <p>
+ * {@link #checkpoint(Path, RecordCodec)} dumps the window to a file, for {@link #restore(Path, RecordCodec)} to load it
+ * back, e.g. into the queue of a new process.
+ * <p>
+ * A queue constructed with a {@link QueueJournal} is journaled: it starts with the elements recovered from the
+ * journal, and offers return only once their element is durable, concurrent offers sharing one force of the journal.
+ * Removing elements from the middle of the window, through {@link #remove(Object)} or the iterator, is not supported
+ * by journaled queues, since the journal only records how far the head has been consumed.
+ * <p>
+ * Every inserted element is stamped with a sequence, one more than the previous one, so that consumers can catch up
+ * without polling: {@link #readSince(long, Object[])} copies the elements inserted since a sequence, without taking
+ * the lock, and tells how many of them already left the window. The elements of a batch larger than the capacity which
+ * never enter the window take no sequence. A journaled queue numbers its elements like its journal.
+ * <p>
+ * With an {@link OverflowTier} set, evicted elements are spilled to it instead of being dropped, which only stages
+ * them under the lock, and {@link #history(int)} reads the newest elements across both tiers. Expired elements are
+ * dropped all the same.
+ */
+public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>, Resizable {
 
     public static final int DEFAULT_CAPACITY = 10;
 
-    private final int capacity;
-    private int currentSize;
-    private final E[] items;
+    private static final int OPTIMISTIC_READ_TRIES = 8;
+    private static final int MIN_ASYNC_PURGE_THRESHOLD = 16;
+
+    private static final int CHECKPOINT_MAGIC = 0x4D524943;
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int CHECKPOINT_HEADER_SIZE = 20;
+    private static final int CHECKPOINT_BUFFER_SIZE = 64 * 1024;
+
+    // volatile so that it can be read without the lock; items, timestamps and sequences are replaced together with it
+    private volatile int capacity;
+    // volatile so that waiting consumers can check it without the lock
+    private volatile int currentSize;
+    private E[] items;
     private int takeIndex;
     private int putIndex;
     private final ReentrantLock lock;
-    private final Condition notEmpty;
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier notEmpty = () -> currentSize != 0;
+    // seqlock version: odd while a mutation of the ring is in progress
+    private volatile long version;
+    // insertion times parallel to items, null when elements never expire
+    private long[] timestamps;
+    // insertion sequences parallel to items
+    private long[] sequences;
+    // sequence of the next element inserted
+    private long nextSequence;
+    private final long maxAgeNanos;
+    private final LongSupplier ticker;
+    // futures of takeAsync and pollAsync, oldest first; only ever non-empty while the queue is empty
+    private final ArrayDeque<CompletableFuture<E>> asyncWaiters = new ArrayDeque<>();
+    private int asyncPurgeThreshold = MIN_ASYNC_PURGE_THRESHOLD;
+    // null unless metrics are enabled
+    private volatile QueueStatistics metrics;
+    private volatile String name;
+    // evictions since the last consumption, counted only while eviction burst events are recorded
+    private int burstEvictions;
+    private long burstStart;
+    // null unless the index is enabled; only used under the lock
+    private ElementIndex elementIndex;
+    // null unless the queue is journaled
+    private final QueueJournal<E> journal;
+    // null unless evicted elements are spilled
+    private volatile OverflowTier<E> overflow;
 
     public MostRecentlyInsertedBlockingQueue(int capacity) {
+        this(capacity, new BlockingWaitStrategy());
+    }
+
+    public MostRecentlyInsertedBlockingQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MostRecentlyInsertedBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+        this(capacity, waitStrategy, 0, (LongSupplier) null, null);
+    }
+
+    public MostRecentlyInsertedBlockingQueue(int capacity, QueueJournal<E> journal) {
+        this(capacity, new BlockingWaitStrategy(), journal);
+    }
+
+    /**
+     * Creates a journaled queue holding the newest elements recovered from {@code journal}.
+     *
+     * @throws IllegalStateException if the journal is already used by another queue
+     */
+    public MostRecentlyInsertedBlockingQueue(int capacity, WaitStrategy waitStrategy, QueueJournal<E> journal) {
+        this(capacity, waitStrategy, 0, (LongSupplier) null, journal);
+        if (journal == null) throw new NullPointerException();
+    }
+
+    public MostRecentlyInsertedBlockingQueue(int capacity, long maxAge, TimeUnit unit) {
+        this(capacity, new BlockingWaitStrategy(), maxAge, unit, System::nanoTime);
+    }
+
+    /**
+     * @param ticker monotonic source of nanoseconds, such as {@link System#nanoTime()}
+     */
+    public MostRecentlyInsertedBlockingQueue(int capacity, WaitStrategy waitStrategy, long maxAge, TimeUnit unit,
+                                             LongSupplier ticker) {
+        this(capacity, waitStrategy, MostRecentlyInsertedQueue.toMaxAgeNanos(maxAge, unit), ticker, null);
+        if (ticker == null) throw new NullPointerException();
+    }
+
+    private MostRecentlyInsertedBlockingQueue(int capacity, WaitStrategy waitStrategy, long maxAgeNanos,
+                                              LongSupplier ticker, QueueJournal<E> journal) {
         if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (waitStrategy == null) throw new NullPointerException();
         this.items = (E[]) new Object[capacity];
         this.capacity = capacity;
         this.lock = new ReentrantLock();
-        this.notEmpty = lock.newCondition();
+        this.waitStrategy = waitStrategy;
+        this.timestamps = (ticker == null) ? null : new long[capacity];
+        this.sequences = new long[capacity];
+        this.maxAgeNanos = maxAgeNanos;
+        this.ticker = ticker;
+        this.name = getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this));
+        this.journal = journal;
+
+        if (journal != null) {
+            E[] recovered = journal.attach();
+            int kept = Math.min(recovered.length, capacity);
+
+            System.arraycopy(recovered, recovered.length - kept, items, 0, kept);
+            putIndex = (kept == capacity) ? 0 : kept;
+            currentSize = kept;
+            // the elements keep the sequences they were journaled with
+            nextSequence = journal.nextSequence() - kept;
+            stamp(0, kept);
+            journal.consumedUpTo(nextSequence - kept);
+        }
+    }
+
+    /**
+     * @return the name of the queue in flight recorder events
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        if (name == null) throw new NullPointerException();
+
+        this.name = name;
+    }
+
+    private int getRealIndex(int i) {
+        return (++i == items.length) ? 0 : i;
+    }
+
+    /**
+     * Starts recording {@link QueueMetrics}, registered on the platform MBean server under {@code name}. Without
+     * metrics, recording costs a null check per operation.
+     *
+     * @return the metrics of this queue
+     */
+    public QueueMetrics enableMetrics(String name) {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            disableMetrics();
+            QueueStatistics metrics = QueueStatistics.register(this, name, this::capacity, this::size);
+            this.metrics = metrics;
+            return metrics;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void disableMetrics() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            QueueStatistics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.unregister();
+                this.metrics = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the metrics of this queue, or null if they are not enabled
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Spills the elements evicted from now on to {@code overflow}, or drops them again if it is null.
+     */
+    public void setOverflowTier(OverflowTier<E> overflow) {
+        this.overflow = overflow;
+    }
+
+    /**
+     * @return the tier evicted elements are spilled to, or null if they are dropped
+     */
+    public OverflowTier<E> getOverflowTier() {
+        return overflow;
+    }
+
+    // Must be called with the lock held: spills the count oldest elements, about to be evicted
+    private void spillOldest(int count) {
+        final OverflowTier<E> overflow = this.overflow;
+
+        if (overflow != null) {
+            overflow.spillRing(items, takeIndex, count);
+        }
+    }
+
+    /**
+     * Starts keeping an index of the elements in the window, linking the occurrences of duplicates, built from the
+     * current window.
+     */
+    public void enableIndex() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            elementIndex = rebuildIndex();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void disableIndex() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            elementIndex = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isIndexed() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return elementIndex != null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must be called with the lock held
+    private ElementIndex rebuildIndex() {
+        ElementIndex index = new ElementIndex(items.length);
+
+        for (int i = 0, slot = takeIndex; i < currentSize; i++, slot = getRealIndex(slot)) {
+            index.add(items[slot], slot);
+        }
+
+        return index;
+    }
+
+    // Acquires the lock; with metrics, counts the contended acquisitions and returns when the lock was acquired
+    private long lock(QueueStatistics metrics) {
+        if (!QueueEvents.isRecorderInitialized()) {
+            acquire(metrics);
+            return lockAcquired(metrics);
+        }
+
+        // begun and ended within this method, so that the event is scalar-replaced while it is not enabled
+        LockContentionEvent event = new LockContentionEvent();
+        event.begin();
+        acquire(metrics);
+        QueueEvents.endLockAcquisition(event, name, capacity, currentSize);
+
+        return lockAcquired(metrics);
+    }
+
+    private void acquire(QueueStatistics metrics) {
+        final ReentrantLock lock = this.lock;
+
+        if (metrics == null) {
+            lock.lock();
+        } else if (!lock.tryLock()) {
+            metrics.recordContendedLock();
+            lock.lock();
+        }
+    }
+
+    private long lockInterruptibly(QueueStatistics metrics) throws InterruptedException {
+        if (!QueueEvents.isRecorderInitialized()) {
+            acquireInterruptibly(metrics);
+            return lockAcquired(metrics);
+        }
+
+        LockContentionEvent event = new LockContentionEvent();
+        event.begin();
+        acquireInterruptibly(metrics);
+        QueueEvents.endLockAcquisition(event, name, capacity, currentSize);
+
+        return lockAcquired(metrics);
+    }
+
+    private void acquireInterruptibly(QueueStatistics metrics) throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+
+        if (metrics == null) {
+            lock.lockInterruptibly();
+        } else {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (!lock.tryLock()) {
+                metrics.recordContendedLock();
+                lock.lockInterruptibly();
+            }
+        }
+    }
+
+    private static long lockAcquired(QueueStatistics metrics) {
+        return (metrics == null) ? 0 : System.nanoTime();
+    }
+
+    // Must be called with the lock held, after offers evicted elements
+    private void recordEvictionBurst(int evicted) {
+        if (!QueueEvents.isRecorderInitialized()) {
+            return;
+        }
+
+        // checked within this method, so that the event is scalar-replaced while it is not enabled
+        EvictionBurstEvent event = new EvictionBurstEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (burstEvictions == 0) {
+            burstStart = now;
+        }
+        burstEvictions += evicted;
+
+        if (burstEvictions >= EvictionBurstEvent.BURST_SIZE) {
+            QueueEvents.commitEvictionBurst(event, burstEvictions, now - burstStart, name, capacity, currentSize);
+            burstEvictions = 0;
+        }
+    }
+
+    // Must be called with the lock held, after elements were consumed
+    private void recordDrain(int drained) {
+        burstEvictions = 0;
+        QueueEvents.commitDrain(drained, name, capacity, currentSize);
+    }
+
+    private void unlock(QueueStatistics metrics, long lockedAt) {
+        if (metrics != null) {
+            metrics.recordLockHold(System.nanoTime() - lockedAt);
+        }
+        lock.unlock();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Grows or shrinks the ring to {@code capacity}, keeping the newest elements. The new ring is allocated before
+     * taking the lock, so producers and consumers are only held up while the window is copied, in at most two
+     * segments.
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+
+        E[] newItems = (E[]) new Object[capacity];
+        long[] newTimestamps = (ticker == null) ? null : new long[capacity];
+        long[] newSequences = new long[capacity];
+        final QueueStatistics metrics = this.metrics;
+
+        long lockedAt = lock(metrics);
+        try {
+            final E[] items = this.items;
+            int kept = Math.min(currentSize, capacity);
+            int evicted = currentSize - kept;
+            int start = (takeIndex + evicted) % items.length;
+
+            spillOldest(evicted);
+            beginWrite();
+            MostRecentlyInsertedQueue.copyRing(items, items.length, start, newItems, kept);
+            if (newTimestamps != null) {
+                MostRecentlyInsertedQueue.copyRing(timestamps, items.length, start, newTimestamps, kept);
+            }
+            MostRecentlyInsertedQueue.copyRing(sequences, items.length, start, newSequences, kept);
+
+            this.items = newItems;
+            this.timestamps = newTimestamps;
+            this.sequences = newSequences;
+            takeIndex = 0;
+            putIndex = (kept == capacity) ? 0 : kept;
+            currentSize = kept;
+            this.capacity = capacity;
+            endWrite();
+
+            if (elementIndex != null) {
+                elementIndex = rebuildIndex();
+            }
+
+            if (metrics != null && evicted != 0) {
+                metrics.recordEvictions(evicted);
+            }
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+    }
+
+    // Must be called with the lock held, around every mutation of the ring or its indexes
+    private void beginWrite() {
+        version = version + 1;
+        // optimistic readers must not see any of the following stores before the odd version
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        // the elements of the ring are always the newest ones journaled
+        if (journal != null) {
+            journal.consumedUpTo(journal.nextSequence() - currentSize);
+        }
+        version = version + 1;
+    }
+
+    // Must be called with the lock held: discards the expired elements at the head
+    private void expire() {
+        if (timestamps == null) {
+            return;
+        }
+
+        int expired = countExpired(timestamps, takeIndex, currentSize, ticker.getAsLong());
+
+        if (expired != 0) {
+            beginWrite();
+            for (int i = 0; i < expired; i++) {
+                dequeue();
+            }
+            endWrite();
+
+            final QueueStatistics metrics = this.metrics;
+            if (metrics != null) {
+                metrics.recordExpirations(expired);
+            }
+        }
+    }
+
+    // Timestamps grow from head to tail, so the expired elements are a prefix of the window
+    private int countExpired(long[] timestamps, int index, int size, long now) {
+        int expired = 0;
+
+        while (expired < size && now - timestamps[index] >= maxAgeNanos) {
+            index = (index + 1 == timestamps.length) ? 0 : index + 1;
+            ++expired;
+        }
+
+        return expired;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Moves up to {@code maxItems} elements into {@code c} under one lock hold, walking the ring directly instead of
+     * polling element by element.
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxItems) {
+        if (c == null) throw new NullPointerException();
+        if (c == this) throw new IllegalArgumentException();
+        if (maxItems <= 0) return 0;
+
+        final QueueStatistics metrics = this.metrics;
+
+        long lockedAt = lock(metrics);
+        try {
+            expire();
+
+            // read under the lock, setCapacity replaces the ring
+            final E[] items = this.items;
+
+            int max = (maxItems < currentSize) ? maxItems : currentSize;
+            int index = takeIndex;
+            int transferred = 0;
+
+            beginWrite();
+            try {
+                final ElementIndex elementIndex = this.elementIndex;
+
+                while (transferred < max) {
+                    c.add(items[index]);
+                    if (elementIndex != null) {
+                        elementIndex.remove(items[index], index);
+                    }
+                    items[index] = null;
+                    index = getRealIndex(index);
+                    ++transferred;
+                }
+
+                return transferred;
+            } finally {
+                // keep the queue consistent even if the collection refused an element
+                currentSize -= transferred;
+                takeIndex = index;
+                endWrite();
+
+                if (metrics != null) {
+                    metrics.recordPolls(transferred);
+                }
+                recordDrain(transferred);
+            }
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+    }
+
+    /**
+     * Moves up to {@code max} elements, oldest first, into {@code dst} starting at {@code off}, copying at most two
+     * contiguous segments of the ring under one lock hold.
+     *
+     * @return the number of elements moved
+     */
+    public int pollInto(E[] dst, int off, int max) {
+        if (dst == null) throw new NullPointerException();
+        if (off < 0 || max < 0 || max > dst.length - off) throw new IndexOutOfBoundsException();
+
+        final QueueStatistics metrics = this.metrics;
+
+        long lockedAt = lock(metrics);
+        try {
+            expire();
+
+            final E[] items = this.items;
+
+            int transferred = (max < currentSize) ? max : currentSize;
+            int firstSegment = Math.min(transferred, items.length - takeIndex);
+
+            if (elementIndex != null) {
+                for (int i = 0, slot = takeIndex; i < transferred; i++, slot = getRealIndex(slot)) {
+                    elementIndex.remove(items[slot], slot);
+                }
+            }
+
+            beginWrite();
+            System.arraycopy(items, takeIndex, dst, off, firstSegment);
+            Arrays.fill(items, takeIndex, takeIndex + firstSegment, null);
+            System.arraycopy(items, 0, dst, off + firstSegment, transferred - firstSegment);
+            Arrays.fill(items, 0, transferred - firstSegment, null);
+
+            takeIndex = (takeIndex + transferred) % items.length;
+            currentSize -= transferred;
+            endWrite();
+
+            if (metrics != null) {
+                metrics.recordPolls(transferred);
+            }
+            recordDrain(transferred);
+
+            return transferred;
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+    }
+
+    /**
+     * Offers {@code len} elements of {@code src} starting at {@code off} under one lock hold, copying at most two
+     * contiguous segments into the ring. When the batch overflows the queue the state jumps straight to the one left
+     * by offering the elements one by one: only the newest {@code capacity} elements are kept.
+     */
+    public void offerAll(E[] src, int off, int len) {
+        MostRecentlyInsertedQueue.checkBatch(src, off, len);
+        if (len == 0) return;
+
+        final QueueStatistics metrics = this.metrics;
+        boolean inserted = false;
+        long journaled = 0;
+
+        long lockedAt = lock(metrics);
+        try {
+            if (asyncWaiters.isEmpty()) {
+                expire();
+                insertAll(src, off, len);
+                inserted = true;
+                journaled = journaledSequence();
+            }
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+
+        if (inserted) {
+            waitStrategy.signalAll();
+            awaitDurable(journaled);
+        } else {
+            // hand the elements over to the async waiters one by one
+            for (int i = off; i < off + len; i++) {
+                offer(src[i]);
+            }
+        }
+    }
+
+    private void insertAll(E[] src, int off, int len) {
+        final E[] items = this.items;
+        final QueueStatistics metrics = this.metrics;
+
+        int evicted = Math.max(0, currentSize + len - capacity);
+
+        if (metrics != null) {
+            metrics.recordEvictions(evicted);
+            metrics.recordOffers(len, Math.min(currentSize + len, capacity));
+        }
+        if (evicted != 0) {
+            recordEvictionBurst(evicted);
+        }
+
+        if (journal != null) {
+            // only the elements which will be in the ring, so that they stay the newest ones journaled
+            for (int i = Math.max(off, off + len - capacity); i < off + len; i++) {
+                journal.append(src[i]);
+            }
+        }
+
+        final OverflowTier<E> overflow = this.overflow;
+        if (overflow != null) {
+            // the window is older than the batch, so it is spilled first
+            overflow.spillRing(items, takeIndex, Math.min(evicted, currentSize));
+            overflow.spillAll(src, off, Math.max(0, len - capacity));
+        }
+
+        final ElementIndex elementIndex = this.elementIndex;
+        if (elementIndex != null) {
+            // the evicted elements are the oldest ones, about to be overwritten
+            for (int i = 0, slot = takeIndex; i < Math.min(evicted, currentSize); i++, slot = getRealIndex(slot)) {
+                elementIndex.remove(items[slot], slot);
+            }
+        }
+
+        beginWrite();
+        if (len >= capacity) {
+            System.arraycopy(src, off + len - capacity, items, 0, capacity);
+            if (timestamps != null) {
+                Arrays.fill(timestamps, ticker.getAsLong());
+            }
+            stamp(0, capacity);
+            takeIndex = 0;
+            putIndex = 0;
+            currentSize = capacity;
+        } else {
+            int firstSegment = Math.min(len, items.length - putIndex);
+
+            System.arraycopy(src, off, items, putIndex, firstSegment);
+            System.arraycopy(src, off + firstSegment, items, 0, len - firstSegment);
+            if (timestamps != null) {
+                long now = ticker.getAsLong();
+                Arrays.fill(timestamps, putIndex, putIndex + firstSegment, now);
+                Arrays.fill(timestamps, 0, len - firstSegment, now);
+            }
+            stamp(putIndex, len);
+
+            putIndex = (putIndex + len) % items.length;
+            currentSize += len;
+            if (currentSize > capacity) {
+                // the overwritten slots were the oldest ones
+                takeIndex = putIndex;
+                currentSize = capacity;
+            }
+        }
+        endWrite();
+
+        if (elementIndex != null) {
+            int inserted = Math.min(len, capacity);
+            int slot = putIndex - inserted;
+            if (slot < 0) {
+                slot += items.length;
+            }
+            for (int i = 0; i < inserted; i++, slot = getRealIndex(slot)) {
+                elementIndex.add(items[slot], slot);
+            }
+        }
+    }
+
+    // Must be called with the lock held: gives the next count sequences to the count slots from slot on
+    private void stamp(int slot, int count) {
+        for (int i = 0; i < count; i++) {
+            sequences[slot] = nextSequence++;
+            slot = getRealIndex(slot);
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) throw new IllegalArgumentException();
+
+        E[] batch = (E[]) c.toArray();
+        offerAll(batch, 0, batch.length);
+
+        return batch.length > 0;
+    }
+
+    /**
+     * Must be called with the lock held.
+     *
+     * @return the async waiter to complete with {@code e} once the lock is released, or null if {@code e} was inserted
+     */
+    private CompletableFuture<E> insertItem(E e) {
+        CompletableFuture<E> waiter;
+
+        while ((waiter = asyncWaiters.poll()) != null) {
+            if (!waiter.isDone()) {
+                return waiter;
+            }
+        }
+
+        expire();
+
+        if (journal != null) {
+            journal.append(e);
+        }
+
+        final QueueStatistics metrics = this.metrics;
+        boolean evicted = currentSize >= capacity;
+
+        beginWrite();
+        if (evicted) {
+            E oldest = dequeue();
+
+            final OverflowTier<E> overflow = this.overflow;
+            if (overflow != null) {
+                overflow.spill(oldest);
+            }
+        }
+
+        items[putIndex] = e;
+        if (timestamps != null) {
+            timestamps[putIndex] = ticker.getAsLong();
+        }
+        sequences[putIndex] = nextSequence++;
+        if (elementIndex != null) {
+            elementIndex.add(e, putIndex);
+        }
+        putIndex = getRealIndex(putIndex);
+        ++currentSize;
+        endWrite();
+
+        if (metrics != null) {
+            if (evicted) {
+                metrics.recordEvictions(1);
+            }
+            metrics.recordOffers(1, currentSize);
+        }
+        if (evicted) {
+            recordEvictionBurst(1);
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+
+        final QueueStatistics metrics = this.metrics;
+
+        while (true) {
+            CompletableFuture<E> waiter;
+            long journaled;
+
+            long lockedAt = lock(metrics);
+            try {
+                waiter = insertItem(e);
+                journaled = journaledSequence();
+            } finally {
+                unlock(metrics, lockedAt);
+            }
+
+            if (waiter == null) {
+                waitStrategy.signal();
+                awaitDurable(journaled);
+                return true;
+            }
+            if (waiter.complete(e)) {
+                recordHandOff(metrics);
+                return true;
+            }
+            // the waiter timed out or got cancelled after it was picked: offer again
+        }
+    }
+
+    /**
+     * The queue always accepts new elements, so this never waits: the timeout is ignored and only an interrupt pending
+     * before the lock is acquired makes it fail.
+     */
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+
+        final QueueStatistics metrics = this.metrics;
+
+        CompletableFuture<E> waiter;
+        long journaled;
+
+        long lockedAt = lockInterruptibly(metrics);
+        try {
+            waiter = insertItem(e);
+            journaled = journaledSequence();
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+
+        if (waiter == null) {
+            waitStrategy.signal();
+            awaitDurable(journaled);
+        } else if (waiter.complete(e)) {
+            recordHandOff(metrics);
+        } else {
+            offer(e);
+        }
+        return true;
+    }
+
+    // Must be called with the lock held: the sequence below which the elements offered so far were journaled
+    private long journaledSequence() {
+        return (journal == null) ? 0 : journal.nextSequence();
+    }
+
+    private void awaitDurable(long journaled) {
+        if (journal != null) {
+            journal.awaitDurable(journaled);
+        }
+    }
+
+    // an element given straight to an async waiter counts as both offered and polled
+    private static void recordHandOff(QueueStatistics metrics) {
+        if (metrics != null) {
+            metrics.recordOffers(1, 0);
+            metrics.recordPolls(1);
+        }
+    }
+
+    private E extract() {
+        beginWrite();
+        E result = dequeue();
+        endWrite();
+
+        final QueueStatistics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordPolls(1);
+        }
+        burstEvictions = 0;
+
+        return result;
+    }
+
+    private E dequeue() {
+        final E[] items = this.items;
+        E result = items[takeIndex];
+
+        if (elementIndex != null) {
+            elementIndex.remove(result, takeIndex);
+        }
+        items[takeIndex] = null;
+        --currentSize;
+        takeIndex = getRealIndex(takeIndex);
+
+        return result;
+    }
+
+    @Override
+    public E poll() {
+        final QueueStatistics metrics = this.metrics;
+
+        long lockedAt = lock(metrics);
+        try {
+            expire();
+            if (currentSize == 0)
+                return null;
+            return extract();
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+    }
+
+    /**
+     * Removes and returns the newest element, or null if the queue is empty.
+     *
+     * @throws UnsupportedOperationException if the queue is journaled
+     */
+    public E pollLast() {
+        if (journal != null) throw new UnsupportedOperationException("Journaled queues only remove their head");
+
+        final QueueStatistics metrics = this.metrics;
+
+        long lockedAt = lock(metrics);
+        try {
+            expire();
+            if (currentSize == 0)
+                return null;
+
+            beginWrite();
+            putIndex = (putIndex == 0) ? items.length - 1 : putIndex - 1;
+            E result = items[putIndex];
+            if (elementIndex != null) {
+                elementIndex.remove(result, putIndex);
+            }
+            items[putIndex] = null;
+            --currentSize;
+            endWrite();
+
+            if (metrics != null) {
+                metrics.recordPolls(1);
+            }
+            burstEvictions = 0;
+
+            return result;
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final QueueStatistics metrics = this.metrics;
+        boolean waiting = false;
+        ConsumerWaitEvent waitEvent = null;
+        long waitingSince = 0;
+
+        while (true) {
+            E result = null;
+
+            long lockedAt = lockInterruptibly(metrics);
+            try {
+                expire();
+                if (currentSize != 0) {
+                    result = extract();
+                }
+            } finally {
+                unlock(metrics, lockedAt);
+            }
+
+            if (result != null || nanos <= 0) {
+                endWait(metrics, waitingSince, waitEvent, result == null);
+                return result;
+            }
+
+            if (!waiting) {
+                waiting = true;
+                waitEvent = QueueEvents.beginConsumerWait();
+                waitingSince = (metrics == null) ? 0 : System.nanoTime();
+            }
+            nanos = waitStrategy.awaitNanos(notEmpty, nanos);
+        }
+    }
+
+    private void endWait(QueueStatistics metrics, long waitingSince, ConsumerWaitEvent event, boolean timedOut) {
+        if (metrics != null && waitingSince != 0) {
+            metrics.recordWait(System.nanoTime() - waitingSince);
+        }
+        QueueEvents.endConsumerWait(event, timedOut, name, capacity, currentSize);
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can ideally (in the absence of memory or
+     * resource constraints) accept without blocking, or Integer.MAX_VALUE if there is no intrinsic limit.
+     *
+     * @return the remaining capacity
+     */
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public E peek() {
+        for (int i = 0; i < OPTIMISTIC_READ_TRIES; i++) {
+            long v = version;
+
+            if ((v & 1) == 0) {
+                final E[] items = this.items;
+                final long[] timestamps = this.timestamps;
+                int takeIndex = this.takeIndex;
+                // setCapacity may be replacing the ring: stay within the arrays read, the version tells the rest
+                E result = (currentSize == 0 || takeIndex >= items.length) ? null : items[takeIndex];
+                boolean expired = result != null && timestamps != null && takeIndex < timestamps.length
+                        && ticker.getAsLong() - timestamps[takeIndex] >= maxAgeNanos;
+                VarHandle.acquireFence();
+                if (version == v) {
+                    if (expired) {
+                        // discard the expired heads under the lock
+                        break;
+                    }
+                    return result;
+                }
+            }
+            Thread.onSpinWait();
+        }
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            expire();
+            return items[takeIndex];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the newest element, or null if the queue is empty, read without taking the lock
+     */
+    public E peekLast() {
+        Object[] last = new Object[1];
+
+        return (readLatest(last, 1) == 0) ? null : (E) last[0];
+    }
+
+    /**
+     * Copies the newest elements, oldest of them first, into {@code dst} without taking the lock: the whole window
+     * if it fits, otherwise its newest {@code dst.length} elements.
+     *
+     * @return the number of elements copied
+     */
+    public int snapshot(E[] dst) {
+        if (dst == null) throw new NullPointerException();
+
+        return readLatest(dst, dst.length);
+    }
+
+    /**
+     * Copies up to the {@code k} newest elements, oldest of them first, to the beginning of {@code dst} without taking
+     * the lock, in at most two contiguous segments.
+     *
+     * @return the number of elements copied
+     */
+    public int copyLatest(E[] dst, int k) {
+        if (dst == null) throw new NullPointerException();
+        if (k < 0 || k > dst.length) throw new IndexOutOfBoundsException();
+
+        return readLatest(dst, k);
+    }
+
+    /**
+     * Copies, oldest first, up to {@code dst.length} elements of the window inserted with {@code sequence} or a later
+     * one, without taking the lock. Passing {@link CatchUp#getNextSequence()} to the next call then reads only what
+     * was inserted in between; {@link CatchUp#getMissed()} counts the sequences skipped because their elements had
+     * already left the window.
+     */
+    public CatchUp readSince(long sequence, E[] dst) {
+        if (dst == null) throw new NullPointerException();
+        if (sequence < 0) throw new IllegalArgumentException("Sequence cant be lower than zero");
+
+        for (int i = 0; i < OPTIMISTIC_READ_TRIES; i++) {
+            long v = version;
+
+            if ((v & 1) == 0) {
+                CatchUp result = copySince(sequence, dst);
+                VarHandle.acquireFence();
+                if (result != null && version == v) {
+                    return result;
+                }
+            }
+            Thread.onSpinWait();
+        }
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return copySince(sequence, dst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence the next inserted element gets
+     */
+    public long getNextSequence() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return nextSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to the {@code k} newest elements, oldest of them first, without taking the lock.
+     */
+    public List<E> latest(int k) {
+        if (k < 0) throw new IllegalArgumentException("Number of elements cant be lower than zero");
+
+        Object[] copy = new Object[Math.min(k, capacity)];
+        int copied = readLatest(copy, copy.length);
+
+        return (List<E>) Arrays.asList(Arrays.copyOf(copy, copied));
+    }
+
+    /**
+     * Returns up to the {@code k} newest elements, oldest of them first: the window, as by {@link #latest(int)},
+     * preceded by the most recently evicted elements when it holds fewer than {@code k} and an {@link OverflowTier}
+     * is set. The tiers are read one after the other, so an element evicted meanwhile may show up in both.
+     */
+    public List<E> history(int k) {
+        return OverflowTier.history(overflow, latest(k), k);
+    }
+
+    /**
+     * Writes the window, oldest element first, to {@code file} after a header holding the capacity, the record size
+     * and the size. The lock is only held to copy the window out of the ring; the elements are then encoded into a
+     * direct buffer and written through a {@link FileChannel}, to a temporary file moved over {@code file} once
+     * complete, so an interrupted checkpoint never leaves a partial one behind. A failed checkpoint deletes its
+     * temporary file.
+     */
+    public void checkpoint(Path file, RecordCodec<E> codec) throws IOException {
+        if (file == null || codec == null) throw new NullPointerException();
+
+        int recordSize = codec.recordSize();
+        if (recordSize <= 0) throw new IllegalArgumentException("Record size must be positive");
+
+        // allocated before taking the lock, unless setCapacity changes the capacity in the meantime
+        Object[] window = new Object[this.capacity];
+        int size;
+        int capacity;
+        final QueueStatistics metrics = this.metrics;
+
+        long lockedAt = lock(metrics);
+        try {
+            expire();
+
+            final E[] items = this.items;
+            if (window.length != items.length) {
+                window = new Object[items.length];
+            }
+            capacity = items.length;
+            size = currentSize;
+            MostRecentlyInsertedQueue.copyRing(items, items.length, takeIndex, window, size);
+        } finally {
+            unlock(metrics, lockedAt);
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer buffer = newCheckpointBuffer(recordSize);
+        // a record is encoded here first, so that a codec writing too much fails before spilling into the next one
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                buffer.putInt(CHECKPOINT_MAGIC).putInt(CHECKPOINT_VERSION).putInt(capacity).putInt(recordSize)
+                        .putInt(size);
+
+                for (int i = 0; i < size; i++) {
+                    if (buffer.remaining() < recordSize) {
+                        write(channel, buffer);
+                    }
+
+                    record.clear();
+                    try {
+                        codec.encode((E) window[i], record);
+                    } catch (BufferOverflowException ex) {
+                        throw new IllegalStateException("Codec wrote more than " + recordSize + " bytes", ex);
+                    }
+                    record.flip();
+
+                    int offset = buffer.position();
+                    buffer.put(record);
+                    buffer.position(offset + recordSize);
+                }
+                write(channel, buffer);
+                channel.force(false);
+            }
+
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        }
     }
 
-    public MostRecentlyInsertedBlockingQueue() {
-        this.items = (E[]) new Object[DEFAULT_CAPACITY];
-        this.capacity = DEFAULT_CAPACITY;
-        this.lock = new ReentrantLock();
-        this.notEmpty = lock.newCondition();
+    // holds a whole number of records, and at least the header
+    private static ByteBuffer newCheckpointBuffer(int recordSize) {
+        int records = Math.max(1, CHECKPOINT_BUFFER_SIZE / recordSize);
+
+        return ByteBuffer.allocateDirect(Math.max(CHECKPOINT_HEADER_SIZE, records * recordSize));
     }
 
-    private int getRealIndex(int i) {
-        return (++i == items.length) ? 0 : i;
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
     }
 
-    @Override
-    public int drainTo(Collection<? super E> c) {
-        if (c == null) throw new NullPointerException();
-        if (c == this) throw new IllegalArgumentException();
+    /**
+     * Replaces the contents of the queue with the window written to {@code file} by
+     * {@link #checkpoint(Path, RecordCodec)}. The file is decoded before taking the lock, and the queue is then
+     * cleared and loaded in a single lock hold, like {@link #offerAll(Object[], int, int)}, so no concurrent offer or
+     * poll can interleave: a window larger than this queue keeps its newest elements, and consumers waiting
+     * asynchronously get the first elements. Expiring elements count their age from the restore.
+     *
+     * @throws IOException if the file is not a checkpoint or was written with another record size
+     */
+    public void restore(Path file, RecordCodec<E> codec) throws IOException {
+        if (file == null || codec == null) throw new NullPointerException();
 
-        final ReentrantLock lock = this.lock;
+        int recordSize = codec.recordSize();
+        E[] window;
 
-        lock.lock();
-        try {
-            int transferred = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = newCheckpointBuffer(recordSize);
 
-            while (currentSize != 0) {
-                c.add(poll());
-                ++transferred;
+            buffer.limit(CHECKPOINT_HEADER_SIZE);
+            read(channel, buffer, file);
+            if (buffer.getInt() != CHECKPOINT_MAGIC || buffer.getInt() != CHECKPOINT_VERSION) {
+                throw new IOException(file + " is not a queue checkpoint");
+            }
+            int capacity = buffer.getInt();
+            if (buffer.getInt() != recordSize) {
+                throw new IOException(file + " was written with another record size than " + recordSize);
+            }
+            int size = buffer.getInt();
+            if (capacity <= 0 || size < 0 || size > capacity
+                    || channel.size() != CHECKPOINT_HEADER_SIZE + (long) size * recordSize) {
+                throw new IOException(file + " has a corrupted header");
             }
 
-            return transferred;
-        } finally {
-            lock.unlock();
-        }
-    }
+            window = (E[]) new Object[size];
+            int records = buffer.capacity() / recordSize;
 
-    @Override
-    public int drainTo(Collection<? super E> c, int maxItems) {
-        if (c == null) throw new NullPointerException();
-        if (c == this) throw new IllegalArgumentException();
-        if (maxItems <= 0) return 0;
+            for (int i = 0; i < size; ) {
+                int batch = Math.min(records, size - i);
 
-        final ReentrantLock lock = this.lock;
+                buffer.clear().limit(batch * recordSize);
+                read(channel, buffer, file);
+                for (int end = i + batch; i < end; i++) {
+                    int offset = buffer.position();
+                    window[i] = codec.decode(buffer);
+                    buffer.position(offset + recordSize);
+                }
+            }
+        }
 
-        lock.lock();
-        try {
-            int max = (maxItems < currentSize) ? maxItems : currentSize;
-            int transferred = 0;
+        final QueueStatistics metrics = this.metrics;
+        CompletableFuture<E>[] waiters = (CompletableFuture<E>[]) new CompletableFuture<?>[window.length];
+        int handedOff = 0;
+        long journaled;
 
-            while (transferred < max) {
-                c.add(poll());
-                ++transferred;
+        long lockedAt = lock(metrics);
+        try {
+            while (currentSize != 0) {
+                extract();
             }
-
-            return transferred;
+            // async waiters are only registered on an empty queue: the first elements go to them, as when offered
+            while (handedOff < window.length && !asyncWaiters.isEmpty()) {
+                waiters[handedOff] = insertItem(window[handedOff]);
+                ++handedOff;
+            }
+            if (handedOff < window.length) {
+                insertAll(window, handedOff, window.length - handedOff);
+            }
+            journaled = journaledSequence();
         } finally {
-            lock.unlock();
+            unlock(metrics, lockedAt);
         }
-    }
 
-    private void insertItem(E e) {
-        if (currentSize >= capacity) {
-            poll();
+        waitStrategy.signalAll();
+        awaitDurable(journaled);
+        for (int i = 0; i < handedOff; i++) {
+            if (waiters[i] == null) {
+                continue;
+            }
+            if (waiters[i].complete(window[i])) {
+                recordHandOff(metrics);
+            } else {
+                offer(window[i]);
+            }
         }
+    }
 
-        items[putIndex] = e;
-        putIndex = getRealIndex(putIndex);
-        ++currentSize;
-        notEmpty.signal();
+    // fills buffer up to its limit and flips it for reading
+    private static void read(FileChannel channel, ByteBuffer buffer, Path file) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+        buffer.flip();
     }
 
-    @Override
-    public boolean offer(E e) {
-        if (e == null) throw new NullPointerException();
+    private int readLatest(Object[] dst, int k) {
+        for (int i = 0; i < OPTIMISTIC_READ_TRIES; i++) {
+            long v = version;
+
+            if ((v & 1) == 0) {
+                int copied = copySegments(dst, k);
+                VarHandle.acquireFence();
+                if (copied >= 0 && version == v) {
+                    return copied;
+                }
+            }
+            Thread.onSpinWait();
+        }
 
         final ReentrantLock lock = this.lock;
 
         lock.lock();
         try {
-            insertItem(e);
-            return true;
+            return copySegments(dst, k);
         } finally {
             lock.unlock();
         }
     }
 
-    @Override
-    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
-        if (e == null) throw new NullPointerException();
+    // copies the newest min(k, live elements) elements in at most two segments ending at putIndex, or returns -1 if
+    // read without the lock while setCapacity was replacing the ring
+    private int copySegments(Object[] dst, int k) {
+        final E[] items = this.items;
+        final long[] timestamps = this.timestamps;
+        int size = currentSize;
+        int takeIndex = this.takeIndex;
+        int putIndex = this.putIndex;
 
-        long nanos = unit.toNanos(timeout);
-        final ReentrantLock lock = this.lock;
+        if (size > items.length || takeIndex >= items.length || putIndex >= items.length
+                || (timestamps != null && timestamps.length != items.length)) {
+            return -1;
+        }
 
-        lock.lockInterruptibly();
-        try {
-            for (; ; ) {
-                if (currentSize != items.length) {
-                    insertItem(e);
-                    return true;
-                }
-                if (nanos <= 0)
-                    return false;
-            }
-        } finally {
-            lock.unlock();
+        int live = size;
+        if (timestamps != null) {
+            live -= countExpired(timestamps, takeIndex, size, ticker.getAsLong());
+        }
+
+        int copied = Math.min(k, live);
+        int start = putIndex - copied;
+        if (start < 0) {
+            start += items.length;
         }
+
+        MostRecentlyInsertedQueue.copyRing(items, items.length, start, dst, copied);
+
+        return copied;
     }
 
-    private E extract() {
+    // copies the live elements from the first one with at least the given sequence, found by binary search since the
+    // sequences grow from head to tail, or returns null if read without the lock while the ring was being replaced
+    private CatchUp copySince(long sequence, Object[] dst) {
         final E[] items = this.items;
-        E result = items[takeIndex];
+        final long[] timestamps = this.timestamps;
+        final long[] sequences = this.sequences;
+        int size = currentSize;
+        int takeIndex = this.takeIndex;
+        long nextSequence = this.nextSequence;
+        int length = items.length;
 
-        items[takeIndex] = null;
-        --currentSize;
-        takeIndex = getRealIndex(takeIndex);
+        if (size > length || takeIndex >= length || sequences.length != length
+                || (timestamps != null && timestamps.length != length)) {
+            return null;
+        }
 
-        return result;
-    }
+        int low = (timestamps == null) ? 0 : countExpired(timestamps, takeIndex, size, ticker.getAsLong());
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int slot = takeIndex + middle;
 
-    @Override
-    public E poll() {
-        final ReentrantLock lock = this.lock;
+            if (sequences[(slot >= length) ? slot - length : slot] < sequence) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
 
-        lock.lock();
-        try {
-            if (currentSize == 0)
-                return null;
-            return extract();
-        } finally {
-            lock.unlock();
+        int copied = Math.min(dst.length, size - low);
+        int start = takeIndex + low;
+        if (start >= length) {
+            start -= length;
+        }
+
+        MostRecentlyInsertedQueue.copyRing(items, length, start, dst, copied);
+
+        long next;
+        if (copied != 0) {
+            int last = start + copied - 1;
+            next = sequences[(last >= length) ? last - length : last] + 1;
+        } else if (low < size) {
+            // nothing fitted in dst: stop at the first element left to read, only skipping those which left the window
+            next = sequences[start];
+        } else {
+            next = Math.max(sequence, nextSequence);
         }
+
+        return new CatchUp(copied, next, next - sequence - copied);
     }
 
     @Override
-    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
-        long nanos = unit.toNanos(timeout);
-        final ReentrantLock lock = this.lock;
-
-        lock.lockInterruptibly();
-        try {
-            while (true) {
-                if (currentSize != 0) {
-                    return extract();
-                }
+    public void put(E e) {
+        offer(e);
+    }
 
-                if (nanos <= 0) {
-                    return null;
-                }
+    /**
+     * Returns a future completed with the head, right away if the queue is not empty, otherwise by the next offer.
+     * Cancelling the future gives up waiting.
+     */
+    public CompletableFuture<E> takeAsync() {
+        final QueueStatistics metrics = this.metrics;
 
-                try {
-                    nanos = notEmpty.awaitNanos(nanos);
-                } catch (InterruptedException ie) {
-                    notEmpty.signal();
-                    throw ie;
-                }
+        long lockedAt = lock(metrics);
+        try {
+            expire();
+            if (currentSize != 0) {
+                return CompletableFuture.completedFuture(extract());
             }
+
+            CompletableFuture<E> waiter = new CompletableFuture<>();
+            addAsyncWaiter(waiter);
+            return waiter;
         } finally {
-            lock.unlock();
+            unlock(metrics, lockedAt);
         }
     }
 
     /**
-     * Returns the number of additional elements that this queue can ideally (in the absence of memory or
-     * resource constraints) accept without blocking, or Integer.MAX_VALUE if there is no intrinsic limit.
-     *
-     * @return the remaining capacity
+     * Like {@link #takeAsync()}, but the future is completed with null if no element is offered within the timeout.
+     * Timeouts are scheduled on the shared delayer of {@link CompletableFuture}.
      */
-    @Override
-    public int remainingCapacity() {
-        return Integer.MAX_VALUE;
-    }
+    public CompletableFuture<E> pollAsync(long timeout, TimeUnit unit) {
+        if (unit == null) throw new NullPointerException();
 
-    @Override
-    public E peek() {
-        final ReentrantLock lock = this.lock;
+        CompletableFuture<E> waiter = takeAsync();
 
-        lock.lock();
-        try {
-            return items[takeIndex];
-        } finally {
-            lock.unlock();
-        }
+        return waiter.isDone() ? waiter : waiter.completeOnTimeout(null, timeout, unit);
     }
 
-    @Override
-    public void put(E e) {
-        offer(e);
+    // Must be called with the lock held. Timed out and cancelled waiters stay in the deque until an offer skips them,
+    // so they are purged once in a while, when the deque has doubled since the last purge
+    private void addAsyncWaiter(CompletableFuture<E> waiter) {
+        if (asyncWaiters.size() >= asyncPurgeThreshold) {
+            asyncWaiters.removeIf(CompletableFuture::isDone);
+            asyncPurgeThreshold = Math.max(MIN_ASYNC_PURGE_THRESHOLD, asyncWaiters.size() * 2);
+        }
+
+        asyncWaiters.add(waiter);
     }
 
     @Override
     public E take() throws InterruptedException {
-        final ReentrantLock lock = this.lock;
+        final QueueStatistics metrics = this.metrics;
+        boolean waiting = false;
+        ConsumerWaitEvent waitEvent = null;
+        long waitingSince = 0;
 
-        lock.lockInterruptibly();
-        try {
+        while (true) {
+            E result = null;
+
+            long lockedAt = lockInterruptibly(metrics);
             try {
-                while (currentSize == 0) {
-                    notEmpty.await();
+                expire();
+                if (currentSize != 0) {
+                    result = extract();
                 }
-            } catch (InterruptedException exception) {
-                notEmpty.signal();
-                throw exception;
+            } finally {
+                unlock(metrics, lockedAt);
             }
-            return extract();
-        } finally {
-            lock.unlock();
+
+            if (result != null) {
+                endWait(metrics, waitingSince, waitEvent, false);
+                return result;
+            }
+
+            if (!waiting) {
+                waiting = true;
+                waitEvent = QueueEvents.beginConsumerWait();
+                waitingSince = (metrics == null) ? 0 : System.nanoTime();
+            }
+            waitStrategy.await(notEmpty);
         }
     }
 
+    /**
+     * Splits a snapshot of the window, copied without taking the lock like {@link #snapshot(Object[])}.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        Object[] snapshot = new Object[capacity];
+        int copied = readLatest(snapshot, snapshot.length);
+
+        return new RingSpliterator<>(snapshot, 0, copied);
+    }
+
+    /**
+     * Iterates from the newest element to the oldest one over a copy of the window taken without the lock. Removal is
+     * not supported.
+     */
+    public Iterator<E> descendingIterator() {
+        return new Iterator<E>() {
+            private final Object[] snapshot = new Object[capacity];
+            private int nextIndex = readLatest(snapshot, snapshot.length) - 1;
+
+            @Override
+            public boolean hasNext() {
+                return nextIndex >= 0;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                return (E) snapshot[nextIndex--];
+            }
+        };
+    }
+
     // Must be manually synchronized by user
     @Override
     public Iterator<E> iterator() {
@@ -247,9 +1598,15 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E> imple
                     throw new IllegalStateException();
                 }
 
-                items[lastReturnedIndex] = null;
+                final ReentrantLock lock = MostRecentlyInsertedBlockingQueue.this.lock;
+
+                lock.lock();
+                try {
+                    nextIndex = removeAt(lastReturnedIndex);
+                } finally {
+                    lock.unlock();
+                }
                 lastReturnedIndex = -1;
-                nextIndex = getRealIndex(nextIndex);
 
                 checkNext();
             }
@@ -289,39 +1646,124 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E> imple
     public boolean contains(Object o) {
         if (o == null) return false;
 
-        final E[] items = this.items;
         final ReentrantLock lock = this.lock;
 
         lock.lock();
         try {
-            int takeIndex = this.takeIndex;
-            int index = 0;
-
-            while (index++ < currentSize) {
-                if (o.equals(items[takeIndex])) {
-                    return true;
-                }
+            expire();
 
-                takeIndex = getRealIndex(takeIndex);
+            if (elementIndex != null) {
+                return elementIndex.contains(o);
             }
-            return false;
+            return indexOf(o) >= 0;
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Removes the oldest occurrence of {@code o}, moving the shorter side of the window over its slot.
+     */
     @Override
-    public int size() {
+    public boolean remove(Object o) {
+        if (o == null) return false;
+
         final ReentrantLock lock = this.lock;
 
         lock.lock();
         try {
-            return currentSize;
+            expire();
+
+            int slot = (elementIndex == null) ? indexOf(o) : elementIndex.slotOf(o);
+
+            if (slot < 0) {
+                return false;
+            }
+            removeAt(slot);
+            return true;
         } finally {
             lock.unlock();
         }
     }
 
+    // Must be called with the lock held: the slot of the oldest occurrence of o, or -1
+    private int indexOf(Object o) {
+        final E[] items = this.items;
+        int slot = takeIndex;
+
+        for (int i = 0; i < currentSize; i++) {
+            if (o.equals(items[slot])) {
+                return slot;
+            }
+
+            slot = getRealIndex(slot);
+        }
+        return -1;
+    }
+
+    /**
+     * Must be called with the lock held: removes the element in {@code slot}, moving the older elements one slot
+     * forward or the newer ones one slot back, whichever are fewer, so the window stays contiguous.
+     *
+     * @return the slot now holding the element which followed the removed one
+     */
+    private int removeAt(int slot) {
+        if (journal != null) throw new UnsupportedOperationException("Journaled queues only remove their head");
+
+        final E[] items = this.items;
+        final ElementIndex elementIndex = this.elementIndex;
+        int length = items.length;
+        int older = slot - takeIndex;
+        if (older < 0) {
+            older += length;
+        }
+        int next;
+
+        if (elementIndex != null) {
+            elementIndex.remove(items[slot], slot);
+        }
+
+        beginWrite();
+        if (older <= currentSize - 1 - older) {
+            for (int i = slot; i != takeIndex; ) {
+                int previous = (i == 0) ? length - 1 : i - 1;
+                move(previous, i);
+                i = previous;
+            }
+            items[takeIndex] = null;
+            takeIndex = getRealIndex(takeIndex);
+            next = getRealIndex(slot);
+        } else {
+            for (int i = slot, following = getRealIndex(slot); following != putIndex; following = getRealIndex(i)) {
+                move(following, i);
+                i = following;
+            }
+            putIndex = (putIndex == 0) ? length - 1 : putIndex - 1;
+            items[putIndex] = null;
+            next = slot;
+        }
+        --currentSize;
+        endWrite();
+
+        return next;
+    }
+
+    private void move(int from, int to) {
+        items[to] = items[from];
+        if (timestamps != null) {
+            timestamps[to] = timestamps[from];
+        }
+        sequences[to] = sequences[from];
+        if (elementIndex != null) {
+            elementIndex.moved(items[to], from, to);
+        }
+    }
+
+    @Override
+    public int size() {
+        return currentSize;
+    }
+
     @Override
     public void clear() {
         final ReentrantLock lock = this.lock;
@@ -333,4 +1775,97 @@ public class MostRecentlyInsertedBlockingQueue<E> extends AbstractQueue<E> imple
             lock.unlock();
         }
     }
+
+    /**
+     * Oldest and newest slot of every element in the window, its occurrences being linked oldest first through two
+     * arrays indexed by slot, so that the oldest occurrence is found, and any occurrence unlinked or moved, in O(1).
+     */
+    private static final class ElementIndex {
+
+        private final HashMap<Object, Entry> entries = new HashMap<>();
+        // slot of the next older and the next newer occurrence of the element in a slot, -1 if there is none
+        private final int[] older;
+        private final int[] newer;
+
+        ElementIndex(int capacity) {
+            this.older = new int[capacity];
+            this.newer = new int[capacity];
+        }
+
+        void add(Object e, int slot) {
+            Entry entry = entries.get(e);
+
+            newer[slot] = -1;
+            if (entry == null) {
+                older[slot] = -1;
+                entries.put(e, new Entry(slot));
+            } else {
+                older[slot] = entry.newest;
+                newer[entry.newest] = slot;
+                entry.newest = slot;
+            }
+        }
+
+        void remove(Object e, int slot) {
+            int before = older[slot];
+            int after = newer[slot];
+
+            if (before < 0 && after < 0) {
+                entries.remove(e);
+                return;
+            }
+
+            Entry entry = (before < 0 || after < 0) ? entries.get(e) : null;
+            if (before < 0) {
+                entry.oldest = after;
+            } else {
+                newer[before] = after;
+            }
+            if (after < 0) {
+                entry.newest = before;
+            } else {
+                older[after] = before;
+            }
+        }
+
+        void moved(Object e, int from, int to) {
+            int before = older[from];
+            int after = newer[from];
+
+            Entry entry = (before < 0 || after < 0) ? entries.get(e) : null;
+            if (before < 0) {
+                entry.oldest = to;
+            } else {
+                newer[before] = to;
+            }
+            if (after < 0) {
+                entry.newest = to;
+            } else {
+                older[after] = to;
+            }
+            older[to] = before;
+            newer[to] = after;
+        }
+
+        boolean contains(Object o) {
+            return entries.containsKey(o);
+        }
+
+        // the slot of the oldest occurrence of o, or -1 if it does not occur
+        int slotOf(Object o) {
+            Entry entry = entries.get(o);
+
+            return (entry == null) ? -1 : entry.oldest;
+        }
+
+        private static final class Entry {
+            int oldest;
+            int newest;
+
+            Entry(int slot) {
+                this.oldest = slot;
+                this.newest = slot;
+            }
+        }
+    }
 }
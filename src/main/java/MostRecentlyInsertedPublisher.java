@@ -0,0 +1,224 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Flow.Publisher} with most-recently-inserted backpressure: every subscription buffers submitted items in its
+ * own {@link ConcurrentMostRecentlyInsertedQueue}, so a subscriber which requests less than is submitted loses the
+ * oldest items instead of slowing down producers or growing a buffer.
+ * <p>
+ * Items are delivered on the given executor by a per-subscription drain task, scheduled only when there is something
+ * to do and never running twice at once, so subscribers need no dedicated thread. The task moves up to
+ * {@code BATCH_SIZE} items out of the buffer at a time, as many as requested.
+ */
+public class MostRecentlyInsertedPublisher<E> implements Flow.Publisher<E>, AutoCloseable {
+
+    private static final int BATCH_SIZE = 64;
+
+    private final int capacity;
+    private final Executor executor;
+    private final CopyOnWriteArrayList<MostRecentlySubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+    private volatile Throwable closedException;
+
+    public MostRecentlyInsertedPublisher(int capacity) {
+        this(capacity, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param capacity the number of items buffered for every subscriber
+     */
+    public MostRecentlyInsertedPublisher(int capacity, Executor executor) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (executor == null) throw new NullPointerException();
+
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super E> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+
+        MostRecentlySubscription subscription = new MostRecentlySubscription(subscriber);
+
+        subscriptions.add(subscription);
+        // the first run signals onSubscribe, and completes the subscriber right away if the publisher is closed
+        executor.execute(subscription);
+    }
+
+    /**
+     * Buffers {@code item} for every current subscriber, evicting the oldest buffered item of those which are full.
+     *
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public void submit(E item) {
+        if (item == null) throw new NullPointerException();
+        if (closed) throw new IllegalStateException("Publisher is closed");
+
+        for (MostRecentlySubscription subscription : subscriptions) {
+            subscription.buffer.offer(item);
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Completes every subscriber once it has been delivered its buffered items. Later submits fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        for (MostRecentlySubscription subscription : subscriptions) {
+            subscription.schedule();
+        }
+    }
+
+    /**
+     * Signals {@code error} to every subscriber, without delivering their buffered items. Later submits fail.
+     */
+    public void closeExceptionally(Throwable error) {
+        if (error == null) throw new NullPointerException();
+
+        closedException = error;
+        close();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getNumberOfSubscribers() {
+        return subscriptions.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private final class MostRecentlySubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super E> subscriber;
+        private final ConcurrentMostRecentlyInsertedQueue<E> buffer;
+        private final E[] batch;
+        private final AtomicLong requested = new AtomicLong();
+        // number of times the drain task was asked to run; starts at one for the run signalling onSubscribe
+        private final AtomicInteger wip = new AtomicInteger(1);
+        private boolean subscribed;
+        private volatile boolean cancelled;
+        private volatile boolean badRequest;
+
+        MostRecentlySubscription(Flow.Subscriber<? super E> subscriber) {
+            this.subscriber = subscriber;
+            this.buffer = new ConcurrentMostRecentlyInsertedQueue<>(capacity);
+            this.batch = (E[]) new Object[Math.min(capacity, BATCH_SIZE)];
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!requested.compareAndSet(current, next));
+            }
+
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+
+            do {
+                if (!cancelled) {
+                    drain();
+                }
+                if (cancelled) {
+                    subscriptions.remove(this);
+                    buffer.clear();
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            try {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+
+                while (!cancelled) {
+                    if (badRequest) {
+                        terminate(new IllegalArgumentException("Number of requested items must be positive"));
+                        return;
+                    }
+                    if (closedException != null) {
+                        terminate(closedException);
+                        return;
+                    }
+
+                    // read before polling, so that items submitted before the close are delivered first
+                    boolean done = closed;
+                    long demand = requested.get();
+                    int polled = (demand == 0) ? 0 : buffer.pollInto(batch, 0, (int) Math.min(demand, batch.length));
+
+                    if (polled == 0) {
+                        if (done && buffer.isEmpty()) {
+                            cancelled = true;
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+
+                    for (int i = 0; i < polled; i++) {
+                        E item = batch[i];
+                        batch[i] = null;
+                        if (!cancelled) {
+                            subscriber.onNext(item);
+                        }
+                    }
+
+                    if (demand != Long.MAX_VALUE) {
+                        requested.addAndGet(-polled);
+                    }
+                }
+            } catch (Throwable t) {
+                // a subscriber which throws is considered cancelled
+                cancelled = true;
+                subscriptions.remove(this);
+                buffer.clear();
+                throw t;
+            }
+        }
+
+        private void terminate(Throwable error) {
+            cancelled = true;
+            subscriber.onError(error);
+        }
+    }
+}
@@ -1,58 +1,353 @@
 import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
-public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> {
+/**
+ * Unsynchronized queue keeping the most recently inserted elements: offering to a full queue evicts the oldest one.
+ * <p>
+ * Optionally the elements also expire after a maximum age. Insertion times come from a ticker, {@link System#nanoTime()}
+ * by default, and are kept in a parallel ring; expired elements are discarded lazily from the head by
+ * {@link #offer(Object)}, {@link #poll()}, {@link #peek()} and the bulk operations, never by a background thread, so
+ * {@link #size()} may still count them until the next of these calls.
+ * <p>
+ * {@link #enableMetrics(String)} turns on counting of offers, polls, evictions and expirations, exposed over JMX.
+ * {@link #setCapacity(int)} resizes the queue in place.
+ * <p>
+ * With an {@link OverflowTier} set, evicted elements are spilled to it instead of being dropped, and
+ * {@link #history(int)} reads the newest elements across both tiers. Expired elements are dropped all the same.
+ */
+public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> implements Resizable {
 
     private static final int DEFAULT_CAPACITY = 10;
 
-    private final int capacity;
+    private int capacity;
     private int currentSize;
-    private final E[] items;
+    private E[] items;
     private int takeIndex;
     private int putIndex;
+    // insertion times parallel to items, null when elements never expire
+    private long[] timestamps;
+    private final long maxAgeNanos;
+    private final LongSupplier ticker;
+    // null unless metrics are enabled
+    private QueueStatistics metrics;
+    // null unless evicted elements are spilled
+    private OverflowTier<E> overflow;
 
     public MostRecentlyInsertedQueue(int capacity) {
         if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
 
         this.items = (E[]) new Object[capacity];
         this.capacity = capacity;
+        this.timestamps = null;
+        this.maxAgeNanos = 0;
+        this.ticker = null;
     }
 
     public MostRecentlyInsertedQueue() {
-        this.items = (E[]) new Object[DEFAULT_CAPACITY];
-        this.capacity = DEFAULT_CAPACITY;
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MostRecentlyInsertedQueue(int capacity, long maxAge, TimeUnit unit) {
+        this(capacity, maxAge, unit, System::nanoTime);
+    }
+
+    /**
+     * @param ticker monotonic source of nanoseconds, such as {@link System#nanoTime()}
+     */
+    public MostRecentlyInsertedQueue(int capacity, long maxAge, TimeUnit unit, LongSupplier ticker) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (ticker == null) throw new NullPointerException();
+
+        this.items = (E[]) new Object[capacity];
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.maxAgeNanos = toMaxAgeNanos(maxAge, unit);
+        this.ticker = ticker;
+    }
+
+    static long toMaxAgeNanos(long maxAge, TimeUnit unit) {
+        if (unit == null) throw new NullPointerException();
+        if (maxAge <= 0) throw new IllegalArgumentException("Max age must be positive");
+
+        return unit.toNanos(maxAge);
     }
 
     private int getRealIndex(int i) {
         return (++i == items.length) ? 0 : i;
     }
 
+    private int getPreviousIndex(int i) {
+        return (i == 0) ? items.length - 1 : i - 1;
+    }
+
+    /**
+     * Starts recording {@link QueueMetrics}, registered on the platform MBean server under {@code name}. Without
+     * metrics, recording costs a null check per operation.
+     *
+     * @return the metrics of this queue
+     */
+    public QueueMetrics enableMetrics(String name) {
+        disableMetrics();
+        metrics = QueueStatistics.register(this, name, this::capacity, this::size);
+
+        return metrics;
+    }
+
+    public void disableMetrics() {
+        if (metrics != null) {
+            metrics.unregister();
+            metrics = null;
+        }
+    }
+
+    /**
+     * @return the metrics of this queue, or null if they are not enabled
+     */
+    public QueueMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Spills the elements evicted from now on to {@code overflow}, or drops them again if it is null.
+     */
+    public void setOverflowTier(OverflowTier<E> overflow) {
+        this.overflow = overflow;
+    }
+
+    /**
+     * @return the tier evicted elements are spilled to, or null if they are dropped
+     */
+    public OverflowTier<E> getOverflowTier() {
+        return overflow;
+    }
+
+    // Spills the count oldest elements, about to be evicted
+    private void spillOldest(int count) {
+        if (overflow != null) {
+            overflow.spillRing(items, takeIndex, count);
+        }
+    }
+
+    /**
+     * Discards the expired elements at the head. Timestamps grow from head to tail, so this stops at the first
+     * element still alive.
+     */
+    private void expire() {
+        if (timestamps == null) {
+            return;
+        }
+
+        long now = ticker.getAsLong();
+        int expired = 0;
+
+        while (currentSize != 0 && now - timestamps[takeIndex] >= maxAgeNanos) {
+            dequeue();
+            ++expired;
+        }
+
+        if (expired != 0 && metrics != null) {
+            metrics.recordExpirations(expired);
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Grows or shrinks the ring to {@code capacity}, keeping the newest elements, copied in at most two segments.
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+
+        int kept = Math.min(currentSize, capacity);
+        int evicted = currentSize - kept;
+        int start = (takeIndex + evicted) % items.length;
+        E[] newItems = (E[]) new Object[capacity];
+
+        spillOldest(evicted);
+        copyRing(items, items.length, start, newItems, kept);
+        if (timestamps != null) {
+            long[] newTimestamps = new long[capacity];
+            copyRing(timestamps, timestamps.length, start, newTimestamps, kept);
+            timestamps = newTimestamps;
+        }
+
+        items = newItems;
+        takeIndex = 0;
+        putIndex = (kept == capacity) ? 0 : kept;
+        currentSize = kept;
+        this.capacity = capacity;
+
+        if (evicted != 0 && metrics != null) {
+            metrics.recordEvictions(evicted);
+        }
+    }
+
+    // copies count elements of the ring array src, of length ringLength, starting at start to the beginning of dst
+    static void copyRing(Object src, int ringLength, int start, Object dst, int count) {
+        int firstSegment = Math.min(count, ringLength - start);
+
+        System.arraycopy(src, start, dst, 0, firstSegment);
+        System.arraycopy(src, 0, dst, firstSegment, count - firstSegment);
+    }
+
     @Override
     public boolean offer(E e) {
         if (e == null) throw new NullPointerException();
 
+        expire();
         insertItem(e);
 
+        if (metrics != null) {
+            metrics.recordOffers(1, currentSize);
+        }
+
         return true;
     }
 
     protected void insertItem(E e) {
         if (currentSize >= capacity) {
-            poll();
+            E evicted = dequeue();
+            if (overflow != null) {
+                overflow.spill(evicted);
+            }
+            if (metrics != null) {
+                metrics.recordEvictions(1);
+            }
         }
 
         items[putIndex] = e;
+        if (timestamps != null) {
+            timestamps[putIndex] = ticker.getAsLong();
+        }
         putIndex = getRealIndex(putIndex);
         ++currentSize;
     }
 
+    /**
+     * Offers {@code len} elements of {@code src} starting at {@code off}, copying at most two contiguous segments into
+     * the ring. When the batch overflows the queue the state jumps straight to the one left by offering the elements
+     * one by one: only the newest {@code capacity} elements are kept.
+     */
+    public void offerAll(E[] src, int off, int len) {
+        checkBatch(src, off, len);
+        expire();
+
+        if (metrics != null) {
+            metrics.recordEvictions(Math.max(0, currentSize + len - capacity));
+            metrics.recordOffers(len, Math.min(currentSize + len, capacity));
+        }
+
+        // the window is older than the batch, so it is spilled first
+        spillOldest(Math.min(currentSize, Math.max(0, currentSize + len - capacity)));
+
+        if (len >= capacity) {
+            if (overflow != null) {
+                overflow.spillAll(src, off, len - capacity);
+            }
+            System.arraycopy(src, off + len - capacity, items, 0, capacity);
+            if (timestamps != null) {
+                Arrays.fill(timestamps, ticker.getAsLong());
+            }
+            takeIndex = 0;
+            putIndex = 0;
+            currentSize = capacity;
+            return;
+        }
+
+        int firstSegment = Math.min(len, items.length - putIndex);
+
+        System.arraycopy(src, off, items, putIndex, firstSegment);
+        System.arraycopy(src, off + firstSegment, items, 0, len - firstSegment);
+        if (timestamps != null) {
+            long now = ticker.getAsLong();
+            Arrays.fill(timestamps, putIndex, putIndex + firstSegment, now);
+            Arrays.fill(timestamps, 0, len - firstSegment, now);
+        }
+
+        putIndex = (putIndex + len) % items.length;
+        currentSize += len;
+        if (currentSize > capacity) {
+            takeIndex = putIndex;
+            currentSize = capacity;
+        }
+    }
+
+    static <E> void checkBatch(E[] array, int off, int len) {
+        if (array == null) throw new NullPointerException();
+        if (off < 0 || len < 0 || len > array.length - off) throw new IndexOutOfBoundsException();
+
+        for (int i = off; i < off + len; i++) {
+            if (array[i] == null) throw new NullPointerException();
+        }
+    }
+
+    /**
+     * Moves up to {@code max} elements, oldest first, into {@code dst} starting at {@code off}, copying at most two
+     * contiguous segments of the ring.
+     *
+     * @return the number of elements moved
+     */
+    public int pollInto(E[] dst, int off, int max) {
+        if (dst == null) throw new NullPointerException();
+        if (off < 0 || max < 0 || max > dst.length - off) throw new IndexOutOfBoundsException();
+
+        expire();
+
+        int transferred = (max < currentSize) ? max : currentSize;
+        int firstSegment = Math.min(transferred, items.length - takeIndex);
+
+        System.arraycopy(items, takeIndex, dst, off, firstSegment);
+        Arrays.fill(items, takeIndex, takeIndex + firstSegment, null);
+        System.arraycopy(items, 0, dst, off + firstSegment, transferred - firstSegment);
+        Arrays.fill(items, 0, transferred - firstSegment, null);
+
+        takeIndex = (takeIndex + transferred) % items.length;
+        currentSize -= transferred;
+
+        if (metrics != null) {
+            metrics.recordPolls(transferred);
+        }
+
+        return transferred;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        if (c == this) throw new IllegalArgumentException();
+
+        E[] batch = (E[]) c.toArray();
+        offerAll(batch, 0, batch.length);
+
+        return batch.length > 0;
+    }
+
     @Override
     public E poll() {
+        expire();
+
         if (currentSize == 0) {
             return null;
         }
 
+        if (metrics != null) {
+            metrics.recordPolls(1);
+        }
+
+        return dequeue();
+    }
+
+    private E dequeue() {
         E x = items[takeIndex];
 
         items[takeIndex] = null;
@@ -64,9 +359,86 @@ public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> {
 
     @Override
     public E peek() {
+        expire();
+
         return items[takeIndex];
     }
 
+    /**
+     * @return the newest element, or null if the queue is empty
+     */
+    public E peekLast() {
+        expire();
+
+        return (currentSize == 0) ? null : items[getPreviousIndex(putIndex)];
+    }
+
+    /**
+     * Removes and returns the newest element, or null if the queue is empty.
+     */
+    public E pollLast() {
+        expire();
+
+        if (currentSize == 0) {
+            return null;
+        }
+
+        putIndex = getPreviousIndex(putIndex);
+        E x = items[putIndex];
+        items[putIndex] = null;
+        --currentSize;
+
+        if (metrics != null) {
+            metrics.recordPolls(1);
+        }
+
+        return x;
+    }
+
+    /**
+     * Copies up to the {@code k} newest elements, oldest of them first, to the beginning of {@code dst}, in at most
+     * two contiguous segments.
+     *
+     * @return the number of elements copied
+     */
+    public int copyLatest(E[] dst, int k) {
+        if (dst == null) throw new NullPointerException();
+        if (k < 0 || k > dst.length) throw new IndexOutOfBoundsException();
+
+        expire();
+
+        int copied = Math.min(k, currentSize);
+        copyRing(items, items.length, (takeIndex + currentSize - copied) % items.length, dst, copied);
+
+        return copied;
+    }
+
+    /**
+     * Returns up to the {@code k} newest elements, oldest of them first: the window, preceded by the most recently
+     * evicted elements when it holds fewer than {@code k} and an {@link OverflowTier} is set.
+     */
+    public List<E> history(int k) {
+        if (k < 0) throw new IllegalArgumentException("Number of elements cant be lower than zero");
+
+        expire();
+
+        E[] copy = (E[]) new Object[Math.min(k, currentSize)];
+        copyLatest(copy, copy.length);
+
+        return OverflowTier.history(overflow, Arrays.asList(copy), k);
+    }
+
+    /**
+     * Splits the window by index range directly over the ring, so the queue must not be modified while the
+     * spliterator is in use.
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        expire();
+
+        return new RingSpliterator<>(items, takeIndex, currentSize);
+    }
+
     @Override
     public Iterator<E> iterator() {
         return new Iterator<E>() {
@@ -118,6 +490,35 @@ public class MostRecentlyInsertedQueue<E> extends AbstractQueue<E> {
         };
     }
 
+    /**
+     * Iterates from the newest element to the oldest one directly over the ring, so the queue must not be modified
+     * while the iterator is in use. Removal is not supported.
+     */
+    public Iterator<E> descendingIterator() {
+        expire();
+
+        return new Iterator<E>() {
+            private int remaining = currentSize;
+            private int nextIndex = getPreviousIndex(putIndex);
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) throw new NoSuchElementException();
+
+                E result = items[nextIndex];
+                nextIndex = getPreviousIndex(nextIndex);
+                --remaining;
+
+                return result;
+            }
+        };
+    }
+
     @Override
     public int size() {
         return currentSize;
@@ -0,0 +1,190 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Most-recently-inserted ring of preallocated, mutable events: the steady state allocates nothing, because producers
+ * fill slots in place and an evicted slot is simply reused by the next lap.
+ * <p>
+ * Producers claim a sequence, mutate the event of that sequence and publish it:
+ * <pre>
+ *     long sequence = ring.next();
+ *     try {
+ *         ring.get(sequence).set(...);
+ *     } finally {
+ *         ring.publish(sequence);
+ *     }
+ * </pre>
+ * Producers never wait for consumers; a producer only waits for the producer of the previous lap of its slot to
+ * publish. Consumers copy events out into instances they own, either by sequence with
+ * {@link #read(long, Object, BiConsumer)} or destructively, oldest first, with {@link #poll(Object, BiConsumer)}.
+ * A copy is validated against the slot sequence afterwards, so an event overwritten while being copied is never
+ * returned. A consumer which gets lapped skips the evicted events; {@link #lostCount()} tells how many.
+ */
+public class MostRecentlyInsertedRingBuffer<E> {
+
+    private static final long CLAIMED = Long.MIN_VALUE;
+    private static final int SPIN_TRIES = 100;
+
+    private final int capacity;
+    private final E[] events;
+    // per slot: the sequence of the event last published in it, or CLAIMED while a producer is writing it
+    private final AtomicLongArray published;
+    private final PaddedAtomicLong cursor = new PaddedAtomicLong();
+    private final PaddedAtomicLong takeSequence = new PaddedAtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+
+    public MostRecentlyInsertedRingBuffer(int capacity, Supplier<? extends E> factory) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (factory == null) throw new NullPointerException();
+
+        this.capacity = capacity;
+        this.events = (E[]) new Object[capacity];
+        this.published = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            E event = factory.get();
+            if (event == null) throw new NullPointerException("Factory returned null");
+
+            events[i] = event;
+            published.lazySet(i, i - capacity);
+        }
+    }
+
+    private int getRealIndex(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    /**
+     * Claims the next sequence. The caller must {@link #publish(long)} it once the event is filled in, otherwise
+     * the producer of the next lap of the slot waits forever.
+     *
+     * @return the claimed sequence
+     */
+    public long next() {
+        long sequence = cursor.getAndIncrement();
+        int index = getRealIndex(sequence);
+
+        for (int spins = 0; published.get(index) != sequence - capacity; spins++) {
+            // the producer of the previous lap got descheduled between claim and publish: let it run
+            if (spins < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+
+        published.set(index, CLAIMED);
+        // readers must observe the claim before any mutation of the event
+        VarHandle.storeStoreFence();
+
+        return sequence;
+    }
+
+    /**
+     * @return the event of a sequence claimed with {@link #next()}, to be mutated in place
+     */
+    public E get(long sequence) {
+        return events[getRealIndex(sequence)];
+    }
+
+    /**
+     * Makes the event of a claimed sequence visible to consumers.
+     */
+    public void publish(long sequence) {
+        published.lazySet(getRealIndex(sequence), sequence);
+    }
+
+    /**
+     * Copies the event published with {@code sequence} into {@code target}, without consuming it.
+     *
+     * @param copier copies its first argument, the slot event, into its second argument
+     * @return false if the sequence is not published yet or has already been overwritten
+     */
+    public boolean read(long sequence, E target, BiConsumer<? super E, ? super E> copier) {
+        int index = getRealIndex(sequence);
+
+        if (published.get(index) != sequence) {
+            return false;
+        }
+
+        copier.accept(events[index], target);
+        VarHandle.acquireFence();
+
+        return published.get(index) == sequence;
+    }
+
+    /**
+     * Copies the oldest published event into {@code target} and consumes it. Events evicted before this consumer
+     * got to them are skipped and added to {@link #lostCount()}.
+     *
+     * @param copier copies its first argument, the slot event, into its second argument
+     * @return the sequence of the copied event, or -1 if no event is available
+     */
+    public long poll(E target, BiConsumer<? super E, ? super E> copier) {
+        for (; ; ) {
+            long sequence = takeSequence.get();
+            int index = getRealIndex(sequence);
+            long slot = published.get(index);
+
+            if (slot == sequence) {
+                copier.accept(events[index], target);
+                VarHandle.acquireFence();
+
+                if (published.get(index) == sequence && takeSequence.compareAndSet(sequence, sequence + 1)) {
+                    return sequence;
+                }
+            } else if (slot > sequence || (slot == CLAIMED && cursor.get() - sequence > capacity)) {
+                // a later lap has overwritten the slot: jump to the oldest sequence still in the ring
+                long oldest = Math.max(sequence + 1, cursor.get() - capacity);
+
+                if (takeSequence.compareAndSet(sequence, oldest)) {
+                    lost.addAndGet(oldest - sequence);
+                }
+            } else {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the next sequence {@link #poll(Object, BiConsumer)} will try to consume
+     */
+    public long getTakeSequence() {
+        return takeSequence.get();
+    }
+
+    /**
+     * @return the last claimed sequence, or -1 if nothing was claimed yet
+     */
+    public long getCursor() {
+        return cursor.get() - 1;
+    }
+
+    /**
+     * @return the number of events evicted before {@link #poll(Object, BiConsumer)} consumed them
+     */
+    public long lostCount() {
+        return lost.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of claimed events not consumed yet, at most the capacity
+     */
+    public int size() {
+        for (; ; ) {
+            long take = takeSequence.get();
+            long claimed = cursor.get();
+
+            if (takeSequence.get() == take) {
+                return (int) Math.max(0, Math.min(claimed - take, capacity));
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cold tier of a most-recently-inserted queue: keeps the newest {@code capacity} elements evicted from the queue,
+ * encoded by a {@link RecordCodec} into a ring outside the heap, either a direct buffer or a mapped file.
+ * <p>
+ * Evicting producers only offer the element to a bounded {@link ConcurrentMostRecentlyInsertedQueue} staging area;
+ * a drain task on the given executor, scheduled only when there is something to do and never running twice at once,
+ * moves staged elements into the ring in batches. Encoding is thus never on the producers' path, and should the task
+ * fall behind by more than {@link #STAGING_CAPACITY} elements, the oldest staged ones are dropped.
+ * <p>
+ * {@link #latest(int)} reads the ring and the staging area together, so an element is visible from its eviction on.
+ */
+public class OverflowTier<E> {
+
+    public static final int STAGING_CAPACITY = 4096;
+
+    private static final int BATCH_SIZE = 64;
+
+    private final int capacity;
+    private final RecordCodec<E> codec;
+    private final int recordSize;
+    private final ByteBuffer ring;
+    // a record is encoded here first, so that a codec writing too much fails before overwriting the next record
+    private final ByteBuffer record;
+    private final Executor executor;
+    private final ConcurrentMostRecentlyInsertedQueue<E> staging;
+    // number of times the drain task was asked to run
+    private final AtomicInteger wip = new AtomicInteger();
+    // held while moving a batch from the staging area into the ring, and while reading both
+    private final ReentrantLock lock = new ReentrantLock();
+    private final E[] batch;
+    // number of elements encoded so far; the ring holds the newest min(written, capacity) of them
+    private long written;
+
+    public OverflowTier(int capacity, RecordCodec<E> codec) {
+        this(capacity, codec, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a tier whose ring is a direct buffer.
+     */
+    public OverflowTier(int capacity, RecordCodec<E> codec, Executor executor) {
+        this(capacity, codec, executor, ByteBuffer.allocateDirect(ringSize(capacity, codec)));
+    }
+
+    /**
+     * Creates a tier whose ring is mapped from {@code file}, so that it lives in the page cache rather than in memory
+     * of the process. The file is overwritten and its contents are not meant to be read back.
+     */
+    public OverflowTier(Path file, int capacity, RecordCodec<E> codec, Executor executor) throws IOException {
+        this(capacity, codec, executor, map(file, ringSize(capacity, codec)));
+    }
+
+    private OverflowTier(int capacity, RecordCodec<E> codec, Executor executor, ByteBuffer ring) {
+        if (executor == null) throw new NullPointerException();
+
+        this.capacity = capacity;
+        this.codec = codec;
+        this.recordSize = codec.recordSize();
+        this.ring = ring;
+        this.record = ByteBuffer.allocate(recordSize);
+        this.executor = executor;
+        this.staging = new ConcurrentMostRecentlyInsertedQueue<>(STAGING_CAPACITY);
+        this.batch = (E[]) new Object[BATCH_SIZE];
+    }
+
+    private static int ringSize(int capacity, RecordCodec<?> codec) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (codec == null) throw new NullPointerException();
+        if (codec.recordSize() <= 0) throw new IllegalArgumentException("Record size must be positive");
+
+        long size = (long) capacity * codec.recordSize();
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Tier does not fit in one buffer");
+
+        return (int) size;
+    }
+
+    private static ByteBuffer map(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Stages an element just evicted from the hot tier.
+     */
+    void spill(E e) {
+        staging.offer(e);
+        schedule();
+    }
+
+    /**
+     * Stages {@code len} elements just evicted from the hot tier, oldest first.
+     */
+    void spillAll(E[] src, int off, int len) {
+        if (len != 0) {
+            staging.offerAll(src, off, len);
+            schedule();
+        }
+    }
+
+    /**
+     * Stages the {@code count} oldest elements of a ring array, starting at {@code start}, just evicted from the hot
+     * tier.
+     */
+    void spillRing(E[] ring, int start, int count) {
+        if (count != 0) {
+            int firstSegment = Math.min(count, ring.length - start);
+
+            staging.offerAll(ring, start, firstSegment);
+            staging.offerAll(ring, 0, count - firstSegment);
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+
+        do {
+            boolean drained = false;
+
+            while (!drained) {
+                final ReentrantLock lock = this.lock;
+
+                lock.lock();
+                try {
+                    int polled = staging.pollInto(batch, 0, batch.length);
+
+                    for (int i = 0; i < polled; i++) {
+                        encode(batch[i]);
+                        batch[i] = null;
+                    }
+                    drained = polled < batch.length;
+                } catch (RuntimeException ex) {
+                    // let the next spill schedule the task again
+                    Arrays.fill(batch, null);
+                    wip.set(0);
+                    throw ex;
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    // Must be called with the lock held
+    private void encode(E e) {
+        record.clear();
+        try {
+            codec.encode(e, record);
+        } catch (BufferOverflowException ex) {
+            throw new IllegalStateException("Codec wrote more than " + recordSize + " bytes", ex);
+        }
+        record.flip();
+
+        ring.position((int) (written % capacity) * recordSize);
+        ring.put(record);
+        ++written;
+    }
+
+    /**
+     * @return the number of evicted elements held, staged or encoded
+     */
+    public int size() {
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            return (int) Math.min(capacity, Math.min(written, capacity) + staging.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to the {@code k} most recently evicted elements, oldest of them first.
+     */
+    public List<E> latest(int k) {
+        if (k < 0) throw new IllegalArgumentException("Number of elements cant be lower than zero");
+
+        final ReentrantLock lock = this.lock;
+
+        lock.lock();
+        try {
+            // the drain task cannot move staged elements meanwhile, so both reads see each element exactly once
+            Object[] staged = staging.toArray();
+            int fromStaging = Math.min(Math.min(k, staged.length), capacity);
+            int fromRing = (int) Math.min(Math.min(k - fromStaging, written), capacity - fromStaging);
+            List<E> result = new ArrayList<>(fromRing + fromStaging);
+
+            for (long sequence = written - fromRing; sequence < written; sequence++) {
+                ring.position((int) (sequence % capacity) * recordSize);
+                result.add(codec.decode(ring));
+            }
+            for (int i = staged.length - fromStaging; i < staged.length; i++) {
+                result.add((E) staged[i]);
+            }
+
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Completes {@code hot}, the newest elements of a queue, oldest first, with the most recently evicted ones of
+     * {@code tier}, if any, up to {@code k} elements in all.
+     */
+    static <E> List<E> history(OverflowTier<E> tier, List<E> hot, int k) {
+        if (tier == null || hot.size() >= k) {
+            return hot;
+        }
+
+        List<E> result = tier.latest(k - hot.size());
+        result.addAll(hot);
+        return result;
+    }
+}
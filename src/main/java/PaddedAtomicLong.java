@@ -0,0 +1,20 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AtomicLong} padded up to a full cache line, so that counters hammered by different threads (for example the
+ * head and tail of a ring) do not false-share.
+ */
+class PaddedAtomicLong extends AtomicLong {
+
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+
+    PaddedAtomicLong() {
+    }
+
+    PaddedAtomicLong(long initialValue) {
+        super(initialValue);
+    }
+}
@@ -0,0 +1,24 @@
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Base of the flight recorder events of the queues, which are all created and committed through {@link QueueEvents}.
+ */
+abstract class QueueEvent extends Event {
+
+    @Label("Queue")
+    String queue;
+
+    @Label("Capacity")
+    int capacity;
+
+    @Label("Size")
+    int size;
+
+    void commit(String queue, int capacity, int size) {
+        this.queue = queue;
+        this.capacity = capacity;
+        this.size = size;
+        commit();
+    }
+}
@@ -0,0 +1,77 @@
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Entry points of the queues into their flight recorder events. The event classes are only touched once the flight
+ * recorder has been initialized, because loading the first event class initializes the recorder's event support,
+ * which takes a noticeable fraction of a second. Past that check, {@code isEnabled()} and {@code shouldCommit()} of
+ * the events decide, so events not enabled in the running recordings, or under their threshold, are never filled in.
+ * <p>
+ * The recorder stays initialized once a recording has started, so on the hot paths, lock acquisitions and evictions,
+ * the queues create their event locally and check it within the same method: the event never escapes unless it is
+ * enabled, and the JIT eliminates its allocation otherwise.
+ */
+final class QueueEvents {
+
+    private QueueEvents() {
+    }
+
+    /**
+     * @return whether event classes may be touched
+     */
+    static boolean isRecorderInitialized() {
+        return FlightRecorder.isInitialized();
+    }
+
+    static void endLockAcquisition(LockContentionEvent event, String queue, int capacity, int size) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.commit(queue, capacity, size);
+        }
+    }
+
+    /**
+     * @return the event to end once the consumer stops waiting, or null if the recorder is not initialized
+     */
+    static ConsumerWaitEvent beginConsumerWait() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+
+        ConsumerWaitEvent event = new ConsumerWaitEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endConsumerWait(ConsumerWaitEvent event, boolean timedOut, String queue, int capacity, int size) {
+        if (event == null) {
+            return;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.timedOut = timedOut;
+            event.commit(queue, capacity, size);
+        }
+    }
+
+    static void commitEvictionBurst(EvictionBurstEvent event, long evicted, long burstDuration, String queue,
+                                    int capacity, int size) {
+        if (event.shouldCommit()) {
+            event.evicted = evicted;
+            event.burstDuration = burstDuration;
+            event.commit(queue, capacity, size);
+        }
+    }
+
+    static void commitDrain(int drained, String queue, int capacity, int size) {
+        if (drained == 0 || !FlightRecorder.isInitialized()) {
+            return;
+        }
+
+        DrainEvent event = new DrainEvent();
+        if (event.shouldCommit()) {
+            event.drained = drained;
+            event.commit(queue, capacity, size);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal of a {@link MostRecentlyInsertedBlockingQueue}, which makes every offered element durable before
+ * the offer returns.
+ * <p>
+ * Elements are numbered by a sequence and appended as fixed-size records, encoded by a {@link RecordCodec}, to
+ * memory-mapped segment files of {@code segmentRecords} records each. Producers waiting for their records to be
+ * durable are group-committed: the first of them forces every record appended so far while the others wait for it,
+ * so one force covers all the producers which appended in the meantime.
+ * <p>
+ * Polls and evictions are not journaled element by element: the queue only advances a consumed-up-to watermark, the
+ * sequence of its head, kept in a small mapped {@code journal.meta} file. Segments entirely below the watermark are
+ * deleted, once it is forced, when a new segment is started, so the journal stays bounded by the capacity of the
+ * queue, and recovery replays only the live window. Consumption becomes durable with the next group commit, so an
+ * element consumed right before a crash may be replayed.
+ * <p>
+ * A journal is opened, and recovered, by its constructor and then given to the queue constructor; it serves a single
+ * queue.
+ */
+public class QueueJournal<E> implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_RECORDS = 4096;
+
+    private static final int MAGIC = 0x4D52494A;
+    private static final int VERSION = 1;
+
+    private static final String META_FILE = "journal.meta";
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int RECORD_SIZE_OFFSET = 8;
+    private static final int SEGMENT_RECORDS_OFFSET = 12;
+    private static final int WATERMARK_OFFSET = 16;
+    private static final int META_SIZE = 24;
+
+    // every record starts with its sequence plus one, zero while never written, and the checksum of its payload
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private final Path directory;
+    private final RecordCodec<E> codec;
+    private final int recordSize;
+    private final int segmentRecords;
+    private final int slotSize;
+    private final MappedByteBuffer meta;
+    private final ConcurrentSkipListMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final CRC32C checksum = new CRC32C();
+    // a payload is encoded here first, so that a codec writing too much fails before overwriting the next record
+    private final ByteBuffer record;
+
+    // appending and the watermark are guarded by the lock of the queue
+    private volatile long nextSequence;
+    private long watermark;
+    private MappedByteBuffer current;
+    private long currentBase;
+    private E[] recovered;
+    private boolean attached;
+    private volatile boolean closed;
+
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition committed = commitLock.newCondition();
+    // every sequence below it is durable
+    private long durableSequence;
+    private boolean forcing;
+    private long commitCount;
+
+    public QueueJournal(Path directory, RecordCodec<E> codec) throws IOException {
+        this(directory, codec, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * Opens the journal in {@code directory}, creating it if needed, and recovers the elements it holds.
+     *
+     * @throws IOException if the journal cannot be read or was created with another record size or segment size
+     */
+    public QueueJournal(Path directory, RecordCodec<E> codec, int segmentRecords) throws IOException {
+        if (directory == null || codec == null) throw new NullPointerException();
+        if (segmentRecords <= 0) throw new IllegalArgumentException("Number of records must be positive");
+
+        this.directory = directory;
+        this.codec = codec;
+        this.recordSize = codec.recordSize();
+        this.segmentRecords = segmentRecords;
+        this.slotSize = RECORD_HEADER_SIZE + recordSize;
+
+        if (recordSize <= 0) throw new IllegalArgumentException("Record size must be positive");
+        if ((long) segmentRecords * slotSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment does not fit in one mapping");
+        }
+        this.record = ByteBuffer.allocate(recordSize);
+
+        Files.createDirectories(directory);
+        Path metaFile = directory.resolve(META_FILE);
+        try (FileChannel channel = FileChannel.open(metaFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            boolean created = channel.size() == 0;
+
+            this.meta = channel.map(FileChannel.MapMode.READ_WRITE, 0, META_SIZE);
+            if (created) {
+                meta.putInt(MAGIC_OFFSET, MAGIC);
+                meta.putInt(VERSION_OFFSET, VERSION);
+                meta.putInt(RECORD_SIZE_OFFSET, recordSize);
+                meta.putInt(SEGMENT_RECORDS_OFFSET, segmentRecords);
+                meta.force();
+            } else if (meta.getInt(MAGIC_OFFSET) != MAGIC || meta.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(directory + " is not a queue journal");
+            } else if (meta.getInt(RECORD_SIZE_OFFSET) != recordSize
+                    || meta.getInt(SEGMENT_RECORDS_OFFSET) != segmentRecords) {
+                throw new IOException(directory + " was created with record size " + meta.getInt(RECORD_SIZE_OFFSET)
+                        + " and " + meta.getInt(SEGMENT_RECORDS_OFFSET) + " records per segment");
+            }
+        }
+
+        recover();
+    }
+
+    private void recover() throws IOException {
+        watermark = meta.getLong(WATERMARK_OFFSET);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+
+                if (base + segmentRecords <= watermark) {
+                    Files.delete(file);
+                } else {
+                    segments.put(base, map(file));
+                }
+            }
+        }
+
+        // the watermark may be older than the segments if a crash came between their deletion and its force: start
+        // from the oldest segment left rather than finding nothing and wiping the newer ones
+        List<E> live = new ArrayList<>();
+        long sequence = segments.isEmpty() ? watermark : Math.max(watermark, segments.firstKey());
+        MappedByteBuffer segment;
+
+        while ((segment = segmentOf(sequence)) != null && isValid(segment, sequence)) {
+            segment.position(slotOffset(sequence) + RECORD_HEADER_SIZE);
+            live.add(codec.decode(segment));
+            ++sequence;
+        }
+
+        // records past the first invalid one were never acknowledged: wipe them, so that they cannot be mistaken for
+        // later records once the sequence gets there again
+        MappedByteBuffer last = segmentOf(sequence);
+        if (last != null) {
+            for (long s = sequence; s < baseOf(sequence) + segmentRecords; s++) {
+                last.putLong(slotOffset(s), 0);
+            }
+            last.force();
+        }
+        for (Long base : segments.tailMap(sequence, false).keySet()) {
+            segments.remove(base);
+            Files.delete(segmentFile(base));
+        }
+
+        nextSequence = sequence;
+        durableSequence = sequence;
+        recovered = (E[]) live.toArray();
+    }
+
+    private boolean isValid(MappedByteBuffer segment, long sequence) {
+        int offset = slotOffset(sequence);
+
+        if (segment.getLong(offset) != sequence + 1) {
+            return false;
+        }
+
+        return segment.getInt(offset + Long.BYTES) == checksumOf(segment, offset + RECORD_HEADER_SIZE);
+    }
+
+    private int checksumOf(MappedByteBuffer segment, int offset) {
+        checksum.reset();
+        segment.limit(offset + recordSize).position(offset);
+        checksum.update(segment);
+        segment.limit(segment.capacity());
+
+        return (int) checksum.getValue();
+    }
+
+    private long baseOf(long sequence) {
+        return sequence - sequence % segmentRecords;
+    }
+
+    private int slotOffset(long sequence) {
+        return (int) (sequence % segmentRecords) * slotSize;
+    }
+
+    private MappedByteBuffer segmentOf(long sequence) {
+        return segments.get(baseOf(sequence));
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * slotSize);
+        }
+    }
+
+    // Called by the queue constructor, which loads the recovered elements
+    E[] attach() {
+        if (attached) throw new IllegalStateException("Journal is already used by a queue");
+        attached = true;
+
+        E[] result = recovered;
+        recovered = null;
+        return result;
+    }
+
+    /**
+     * Must be called under the lock of the queue: appends {@code e} with the next sequence. The record is durable
+     * once {@link #awaitDurable(long)} returns for a later sequence.
+     */
+    void append(E e) {
+        if (closed) throw new IllegalStateException("Journal is closed");
+
+        record.clear();
+        try {
+            codec.encode(e, record);
+        } catch (BufferOverflowException ex) {
+            throw new IllegalStateException("Codec wrote more than " + recordSize + " bytes", ex);
+        }
+        record.flip();
+
+        long sequence = nextSequence;
+        long base = baseOf(sequence);
+
+        if (current == null || currentBase != base) {
+            roll(base);
+        }
+
+        int offset = slotOffset(sequence);
+        int payload = offset + RECORD_HEADER_SIZE;
+
+        current.position(payload);
+        current.put(record);
+        current.putInt(offset + Long.BYTES, checksumOf(current, payload));
+        // written last, so that a record is only valid once complete
+        current.putLong(offset, sequence + 1);
+
+        nextSequence = sequence + 1;
+    }
+
+    private void roll(long base) {
+        try {
+            MappedByteBuffer segment = segments.get(base);
+            if (segment == null) {
+                segment = map(segmentFile(base));
+                segments.put(base, segment);
+            }
+            current = segment;
+            currentBase = base;
+
+            // the segments below the watermark only hold consumed elements, and the watermark must be durable before
+            // they are gone, or recovery would start from a sequence no segment holds any more
+            Set<Long> consumed = segments.headMap(baseOf(watermark), false).keySet();
+            if (!consumed.isEmpty()) {
+                meta.force();
+            }
+            for (Long old : consumed) {
+                segments.remove(old);
+                Files.deleteIfExists(segmentFile(old));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Must be called under the lock of the queue.
+     *
+     * @return the sequence the next appended element gets
+     */
+    long nextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * Must be called under the lock of the queue: every element below {@code sequence} has been consumed.
+     */
+    void consumedUpTo(long sequence) {
+        if (sequence != watermark) {
+            watermark = sequence;
+            meta.putLong(WATERMARK_OFFSET, sequence);
+        }
+    }
+
+    /**
+     * Returns once every element below {@code sequence} is durable. The first caller finding no force in progress
+     * forces everything appended so far, on behalf of every caller waiting meanwhile.
+     */
+    void awaitDurable(long sequence) {
+        final ReentrantLock commitLock = this.commitLock;
+
+        commitLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (forcing) {
+                    committed.awaitUninterruptibly();
+                    continue;
+                }
+
+                forcing = true;
+                long from = durableSequence;
+                long to = nextSequence;
+                boolean forced = false;
+
+                commitLock.unlock();
+                try {
+                    force(from, to);
+                    forced = true;
+                } finally {
+                    commitLock.lock();
+                    forcing = false;
+                    if (forced) {
+                        durableSequence = to;
+                        ++commitCount;
+                    }
+                    committed.signalAll();
+                }
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    private void force(long from, long to) {
+        if (from < to) {
+            Long first = segments.floorKey(from);
+
+            for (MappedByteBuffer segment : segments.subMap((first == null) ? from : first, to).values()) {
+                segment.force();
+            }
+        }
+        meta.force();
+    }
+
+    /**
+     * @return the sequence below which every appended element is durable
+     */
+    public long getDurableSequence() {
+        commitLock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of group commits, each forcing the records of one or more producers
+     */
+    public long getCommitCount() {
+        commitLock.lock();
+        try {
+            return commitCount;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the journal and makes further appends fail. The mappings are released once garbage collected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        commitLock.lock();
+        try {
+            for (MappedByteBuffer segment : segments.values()) {
+                segment.force();
+            }
+            meta.force();
+            durableSequence = nextSequence;
+        } finally {
+            commitLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import javax.management.MXBean;
+
+/**
+ * Counters of a queue with metrics enabled, also exposed over JMX. Durations are histograms of {@code 64} log2
+ * buckets: bucket {@code i} counts the durations {@code d} in nanoseconds with {@code 2^i <= d < 2^(i+1)}, bucket
+ * {@code 0} also counting the zero durations.
+ */
+@MXBean
+public interface QueueMetrics {
+
+    int getCapacity();
+
+    int getSize();
+
+    /**
+     * @return the largest size the queue reached
+     */
+    int getHighWaterMark();
+
+    long getOfferCount();
+
+    /**
+     * @return the number of elements consumed by polls, takes and drains
+     */
+    long getPollCount();
+
+    /**
+     * @return the number of elements evicted by offers to a full queue
+     */
+    long getEvictionCount();
+
+    /**
+     * @return the number of elements discarded because they outlived the max age of the queue
+     */
+    long getExpirationCount();
+
+    /**
+     * @return the number of lock acquisitions which found the lock held, always 0 for lock-free queues
+     */
+    long getContendedLockCount();
+
+    /**
+     * @return how long consumers waited for an element in blocking takes and polls
+     */
+    long[] getWaitTimeHistogram();
+
+    /**
+     * @return how long operations held the queue lock
+     */
+    long[] getLockHoldTimeHistogram();
+}
@@ -0,0 +1,168 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * {@link QueueMetrics} recorded by the queues with metrics enabled. Counters and histogram buckets are
+ * {@link LongAdder}s, so that threads recording concurrently do not contend on a single cache line, and the high
+ * water mark is only written when it grows.
+ */
+final class QueueStatistics implements QueueMetrics {
+
+    private static final int BUCKETS = 64;
+
+    private final ObjectName name;
+    private final IntSupplier capacity;
+    private final IntSupplier size;
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private final LongAdder offers = new LongAdder();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder contendedLocks = new LongAdder();
+    private final LongAdder[] waitTimes = newHistogram();
+    private final LongAdder[] lockHoldTimes = newHistogram();
+
+    private QueueStatistics(ObjectName name, IntSupplier capacity, IntSupplier size) {
+        this.name = name;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    /**
+     * Creates the statistics of a queue and registers them on the platform MBean server as
+     * {@code Queues:type=<queue class>,name=<name>}.
+     *
+     * @throws IllegalArgumentException if the name is not valid or already registered
+     */
+    static QueueStatistics register(Object queue, String name, IntSupplier capacity, IntSupplier size) {
+        if (name == null) throw new NullPointerException();
+
+        try {
+            ObjectName objectName = new ObjectName("Queues:type=" + queue.getClass().getSimpleName()
+                    + ",name=" + ObjectName.quote(name));
+            QueueStatistics statistics = new QueueStatistics(objectName, capacity, size);
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, objectName);
+            return statistics;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Cant register metrics of queue " + name, e);
+        }
+    }
+
+    void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            // already unregistered by someone else
+        }
+    }
+
+    private static LongAdder[] newHistogram() {
+        LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+
+        return histogram;
+    }
+
+    private static void record(LongAdder[] histogram, long nanos) {
+        histogram[Math.max(0, 63 - Long.numberOfLeadingZeros(nanos))].increment();
+    }
+
+    private static long[] snapshot(LongAdder[] histogram) {
+        long[] counts = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+        }
+
+        return counts;
+    }
+
+    void recordOffers(int count, int sizeAfter) {
+        offers.add(count);
+
+        int high;
+        while (sizeAfter > (high = highWaterMark.get()) && !highWaterMark.compareAndSet(high, sizeAfter)) ;
+    }
+
+    void recordPolls(int count) {
+        polls.add(count);
+    }
+
+    void recordEvictions(int count) {
+        evictions.add(count);
+    }
+
+    void recordExpirations(int count) {
+        expirations.add(count);
+    }
+
+    void recordContendedLock() {
+        contendedLocks.increment();
+    }
+
+    void recordWait(long nanos) {
+        record(waitTimes, nanos);
+    }
+
+    void recordLockHold(long nanos) {
+        record(lockHoldTimes, nanos);
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity.getAsInt();
+    }
+
+    @Override
+    public int getSize() {
+        return size.getAsInt();
+    }
+
+    @Override
+    public int getHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    @Override
+    public long getOfferCount() {
+        return offers.sum();
+    }
+
+    @Override
+    public long getPollCount() {
+        return polls.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    @Override
+    public long getContendedLockCount() {
+        return contendedLocks.sum();
+    }
+
+    @Override
+    public long[] getWaitTimeHistogram() {
+        return snapshot(waitTimes);
+    }
+
+    @Override
+    public long[] getLockHoldTimeHistogram() {
+        return snapshot(lockHoldTimes);
+    }
+}
@@ -0,0 +1,24 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size binary encoding of queue elements, used wherever a queue keeps its elements outside the heap.
+ * <p>
+ * Every element must encode to exactly {@link #recordSize()} bytes, so that records can be addressed by slot index.
+ */
+public interface RecordCodec<E> {
+
+    /**
+     * @return the number of bytes every encoded element occupies
+     */
+    int recordSize();
+
+    /**
+     * Writes {@code e} at the current position of {@code buffer}, advancing it by at most {@link #recordSize()} bytes.
+     */
+    void encode(E e, ByteBuffer buffer);
+
+    /**
+     * Reads an element written by {@link #encode(Object, ByteBuffer)} from the current position of {@code buffer}.
+     */
+    E decode(ByteBuffer buffer);
+}
@@ -0,0 +1,21 @@
+/**
+ * Queue whose capacity can be changed while it is in use.
+ */
+public interface Resizable {
+
+    int capacity();
+
+    /**
+     * Grows or shrinks the queue to {@code capacity}, keeping its newest elements.
+     *
+     * @throws IllegalArgumentException if the capacity is not supported by the queue
+     */
+    void setCapacity(int capacity);
+
+    /**
+     * @return the largest capacity {@link #setCapacity(int)} accepts
+     */
+    default int maxCapacity() {
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over {@code size} elements of a ring array, the first of them at {@code head} and the others following it
+ * with wrap-around. It splits by halving its index range, so the halves are exactly sized and parallel streams divide a
+ * large window evenly; traversal copies nothing and walks at most two contiguous segments.
+ * <p>
+ * The queues give it a snapshot of their window, or their ring itself when they are not thread-safe.
+ */
+final class RingSpliterator<E> implements Spliterator<E> {
+
+    private final Object[] ring;
+    private final int head;
+    // range of element positions, counted from head, still to traverse
+    private int index;
+    private final int fence;
+
+    RingSpliterator(Object[] ring, int head, int size) {
+        this(ring, head, 0, size);
+    }
+
+    private RingSpliterator(Object[] ring, int head, int index, int fence) {
+        this.ring = ring;
+        this.head = head;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    private int slot(int position) {
+        int slot = head + position;
+        return (slot >= ring.length) ? slot - ring.length : slot;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+        if (action == null) throw new NullPointerException();
+
+        if (index >= fence) {
+            return false;
+        }
+
+        action.accept((E) ring[slot(index++)]);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super E> action) {
+        if (action == null) throw new NullPointerException();
+
+        final Object[] ring = this.ring;
+        int from = slot(index);
+        int remaining = fence - index;
+        int firstSegment = Math.min(remaining, ring.length - from);
+        index = fence;
+
+        for (int i = from; i < from + firstSegment; i++) {
+            action.accept((E) ring[i]);
+        }
+        for (int i = 0; i < remaining - firstSegment; i++) {
+            action.accept((E) ring[i]);
+        }
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+        int mid = (index + fence) >>> 1;
+
+        if (mid <= index) {
+            return null;
+        }
+
+        Spliterator<E> prefix = new RingSpliterator<>(ring, head, index, mid);
+        index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Spins, then yields, then sleeps for a short fixed period between checks. Keeps idle consumers cheap for batch
+ * processing while producers never pay for a signal; the latency is bounded by the sleep period.
+ */
+public class SleepingWaitStrategy extends SpinningWaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long DEFAULT_SLEEP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final long sleepNanos;
+
+    public SleepingWaitStrategy() {
+        this(DEFAULT_SLEEP_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    public SleepingWaitStrategy(long sleep, TimeUnit unit) {
+        if (sleep <= 0) throw new IllegalArgumentException("Sleep period must be positive");
+
+        this.sleepNanos = unit.toNanos(sleep);
+    }
+
+    @Override
+    protected void idle(int iteration) {
+        if (iteration < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (iteration < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(sleepNanos);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins for a bounded number of checks, catching elements which arrive within a few microseconds without any
+ * signal, then parks like {@link BlockingWaitStrategy}. Producers only pay for a signal when a consumer actually
+ * got parked.
+ */
+public class SpinThenParkWaitStrategy implements WaitStrategy {
+
+    private static final int DEFAULT_SPIN_TRIES = 1000;
+
+    private final int spinTries;
+    private final BlockingWaitStrategy blocking = new BlockingWaitStrategy();
+
+    public SpinThenParkWaitStrategy() {
+        this(DEFAULT_SPIN_TRIES);
+    }
+
+    public SpinThenParkWaitStrategy(int spinTries) {
+        if (spinTries < 0) throw new IllegalArgumentException("Number of spins cant be lower than zero");
+
+        this.spinTries = spinTries;
+    }
+
+    private boolean spin(BooleanSupplier condition) {
+        for (int i = 0; i < spinTries; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        return false;
+    }
+
+    @Override
+    public void await(BooleanSupplier condition) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+
+        if (!spin(condition)) {
+            blocking.await(condition);
+        }
+    }
+
+    @Override
+    public long awaitNanos(BooleanSupplier condition, long nanos) throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+
+        final long start = System.nanoTime();
+
+        if (spin(condition)) {
+            return nanos - (System.nanoTime() - start);
+        }
+
+        return blocking.awaitNanos(condition, nanos - (System.nanoTime() - start));
+    }
+
+    @Override
+    public void signal() {
+        blocking.signal();
+    }
+
+    @Override
+    public void signalAll() {
+        blocking.signalAll();
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * Base of the wait strategies which never park on a condition, so producers have nothing to signal. Subclasses only
+ * decide how to idle between two checks of the condition.
+ */
+abstract class SpinningWaitStrategy implements WaitStrategy {
+
+    /**
+     * Idles once between two checks of the condition.
+     *
+     * @param iteration how many times the condition has been checked so far
+     */
+    protected abstract void idle(int iteration);
+
+    @Override
+    public void await(BooleanSupplier condition) throws InterruptedException {
+        for (int iteration = 0; !condition.getAsBoolean(); iteration++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+
+            idle(iteration);
+        }
+    }
+
+    @Override
+    public long awaitNanos(BooleanSupplier condition, long nanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + nanos;
+
+        for (int iteration = 0; !condition.getAsBoolean(); iteration++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if ((nanos = deadline - System.nanoTime()) <= 0) return nanos;
+
+            idle(iteration);
+        }
+
+        return deadline - System.nanoTime();
+    }
+
+    @Override
+    public void signal() {
+    }
+
+    @Override
+    public void signalAll() {
+    }
+}
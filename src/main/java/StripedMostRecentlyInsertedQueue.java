@@ -0,0 +1,301 @@
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe most-recently-inserted queue split into independently locked stripes, so that producers running on
+ * different cores do not contend on a single tail.
+ * <p>
+ * Every producer thread offers into the stripe picked by its thread id, and each stripe holds {@code capacity / N} of
+ * the elements (the first {@code capacity % N} stripes hold one more), so the overall bound stays at {@code capacity}.
+ * Every element is stamped from a global counter. {@link #poll()} and {@link #peek()} pick the stripe with the oldest
+ * head, and {@link #drainTo(Collection)} and {@link #iterator()} merge the stripes by stamp.
+ * <p>
+ * The price of this scaling is strict global recency:
+ * <ul>
+ * <li>eviction is per stripe, so a producer evicts the oldest element <em>of its own stripe</em>, which may be newer
+ * than elements kept in other stripes; a single producer thread only ever sees a window of {@code capacity / N}
+ * elements;</li>
+ * <li>{@link #poll()} reads the stripe heads without locking them all, so two concurrent polls may return elements
+ * slightly out of global stamp order.</li>
+ * </ul>
+ * The {@code ProducerConsumerBenchmark} in {@code src/jmh} measures it against the single-ring queues.
+ */
+public class StripedMostRecentlyInsertedQueue<E> extends AbstractQueue<E> {
+
+    private final int capacity;
+    private final Stripe<E>[] stripes;
+    private final PaddedAtomicLong stamp = new PaddedAtomicLong();
+
+    /**
+     * Creates a queue with one stripe per available processor, capped at {@code capacity}. Since every thread offers
+     * into a single stripe, a lone producer thread keeps only about {@code capacity / availableProcessors} of its
+     * newest elements; use {@link #StripedMostRecentlyInsertedQueue(int, int)} with fewer stripes when producers are
+     * few, or a single stripe to keep the whole window for one producer.
+     */
+    public StripedMostRecentlyInsertedQueue(int capacity) {
+        this(capacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripeCount number of independently locked stripes, capped at {@code capacity}; each thread sees a window
+     *                    of about {@code capacity / stripeCount} elements
+     */
+    public StripedMostRecentlyInsertedQueue(int capacity, int stripeCount) {
+        if (capacity <= 0) throw new IllegalArgumentException("Size of queue cant be lower than zero");
+        if (stripeCount <= 0) throw new IllegalArgumentException("Number of stripes must be positive");
+
+        int count = Math.min(stripeCount, capacity);
+
+        @SuppressWarnings("unchecked")
+        Stripe<E>[] stripes = (Stripe<E>[]) new Stripe<?>[count];
+
+        this.capacity = capacity;
+        this.stripes = stripes;
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>(capacity / count + ((i < capacity % count) ? 1 : 0));
+        }
+    }
+
+    private static final class Stripe<E> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final E[] items;
+        private final long[] stamps;
+        private int takeIndex;
+        private int putIndex;
+        private volatile int currentSize;
+        // stamp of the head, Long.MAX_VALUE when empty; read without the lock to pick the oldest stripe
+        private volatile long headStamp = Long.MAX_VALUE;
+
+        Stripe(int capacity) {
+            this.items = (E[]) new Object[capacity];
+            this.stamps = new long[capacity];
+        }
+
+        private int getRealIndex(int i) {
+            return (++i == items.length) ? 0 : i;
+        }
+
+        void insert(E e, long stamp) {
+            if (currentSize == items.length) {
+                extract();
+            }
+
+            items[putIndex] = e;
+            stamps[putIndex] = stamp;
+            putIndex = getRealIndex(putIndex);
+            if (currentSize++ == 0) {
+                headStamp = stamp;
+            }
+        }
+
+        E extract() {
+            E result = items[takeIndex];
+
+            items[takeIndex] = null;
+            takeIndex = getRealIndex(takeIndex);
+            headStamp = (--currentSize == 0) ? Long.MAX_VALUE : stamps[takeIndex];
+
+            return result;
+        }
+
+        void clear() {
+            Arrays.fill(items, null);
+            takeIndex = putIndex;
+            currentSize = 0;
+            headStamp = Long.MAX_VALUE;
+        }
+    }
+
+    private Stripe<E> stripeOfCurrentThread() {
+        return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+    }
+
+    private Stripe<E> oldestStripe() {
+        Stripe<E> oldest = null;
+        long oldestStamp = Long.MAX_VALUE;
+
+        for (Stripe<E> stripe : stripes) {
+            long headStamp = stripe.headStamp;
+            if (headStamp < oldestStamp) {
+                oldestStamp = headStamp;
+                oldest = stripe;
+            }
+        }
+
+        return oldest;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+
+        final Stripe<E> stripe = stripeOfCurrentThread();
+
+        stripe.lock.lock();
+        try {
+            // stamped under the stripe lock so that stamps grow monotonically within every stripe
+            stripe.insert(e, stamp.getAndIncrement());
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll() {
+        Stripe<E> stripe;
+
+        while ((stripe = oldestStripe()) != null) {
+            stripe.lock.lock();
+            try {
+                if (stripe.currentSize != 0) {
+                    return stripe.extract();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public E peek() {
+        Stripe<E> stripe;
+
+        while ((stripe = oldestStripe()) != null) {
+            stripe.lock.lock();
+            try {
+                if (stripe.currentSize != 0) {
+                    return stripe.items[stripe.takeIndex];
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+
+        for (Stripe<E> stripe : stripes) {
+            size += stripe.currentSize;
+        }
+
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Moves up to {@code maxItems} elements into {@code c} in global stamp order. All stripes are locked for the
+     * duration of the merge, so the result is an exact ordering of the window at that moment.
+     */
+    public int drainTo(Collection<? super E> c, int maxItems) {
+        if (c == null) throw new NullPointerException();
+        if (c == this) throw new IllegalArgumentException();
+        if (maxItems <= 0) return 0;
+
+        lockAll();
+        try {
+            int transferred = 0;
+            Stripe<E> stripe;
+
+            while (transferred < maxItems && (stripe = oldestStripe()) != null) {
+                c.add(stripe.extract());
+                ++transferred;
+            }
+
+            return transferred;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lockAll();
+        try {
+            for (Stripe<E> stripe : stripes) {
+                stripe.clear();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // stripes are always locked in index order, so concurrent merges cannot deadlock
+    private void lockAll() {
+        for (Stripe<E> stripe : stripes) {
+            stripe.lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the window merged in stamp order. Each stripe is copied under its own
+     * lock, so the snapshot is consistent per stripe but not across stripes. Removal is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        int count = stripes.length;
+        Object[][] items = new Object[count][];
+        long[][] stamps = new long[count][];
+
+        for (int s = 0; s < count; s++) {
+            Stripe<E> stripe = stripes[s];
+
+            stripe.lock.lock();
+            try {
+                int size = stripe.currentSize;
+                items[s] = new Object[size];
+                stamps[s] = new long[size];
+
+                for (int i = 0, index = stripe.takeIndex; i < size; i++, index = stripe.getRealIndex(index)) {
+                    items[s][i] = stripe.items[index];
+                    stamps[s][i] = stripe.stamps[index];
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+
+        int total = 0;
+        for (Object[] stripeItems : items) {
+            total += stripeItems.length;
+        }
+
+        Object[] merged = new Object[total];
+        int[] positions = new int[count];
+
+        for (int m = 0; m < total; m++) {
+            int oldest = -1;
+            for (int s = 0; s < count; s++) {
+                if (positions[s] < stamps[s].length
+                        && (oldest < 0 || stamps[s][positions[s]] < stamps[oldest][positions[oldest]])) {
+                    oldest = s;
+                }
+            }
+            merged[m] = items[oldest][positions[oldest]++];
+        }
+
+        return (Iterator<E>) Arrays.asList(merged).iterator();
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.function.BooleanSupplier;
+
+/**
+ * How consumers of a {@link MostRecentlyInsertedBlockingQueue} wait for elements and how producers wake them up.
+ * <p>
+ * Consumers wait outside the queue lock until {@code condition} holds; they re-check the queue under the lock
+ * afterwards, so spurious returns are harmless. Producers call {@link #signal()} or {@link #signalAll()} after
+ * publishing elements, and implementations which do not park threads make those calls no-ops.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until {@code condition} holds.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void await(BooleanSupplier condition) throws InterruptedException;
+
+    /**
+     * Waits until {@code condition} holds or {@code nanos} elapse.
+     *
+     * @return an estimate of the remaining nanoseconds, zero or less on timeout
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    long awaitNanos(BooleanSupplier condition, long nanos) throws InterruptedException;
+
+    /**
+     * Wakes up one waiting consumer, if any is parked.
+     */
+    void signal();
+
+    /**
+     * Wakes up every waiting consumer, if any is parked.
+     */
+    void signalAll();
+}
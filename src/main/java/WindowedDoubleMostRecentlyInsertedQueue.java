@@ -0,0 +1,232 @@
+import java.util.NoSuchElementException;
+
+/**
+ * {@link DoubleMostRecentlyInsertedQueue} maintaining sum, mean, variance, min and max of its current window, updated
+ * as values are offered and as they leave the window by eviction, poll or drain. Every query is O(1) and no
+ * operation allocates.
+ * <p>
+ * The sum and the sum of squared deviations from the mean (updated with Welford's recurrence, in both directions)
+ * use compensated summation, so adding and removing values does not accumulate rounding errors; both are reset
+ * exactly whenever the window becomes empty. Min and max are the fronts of two monotonic deques of the window values,
+ * each kept in a preallocated ring.
+ */
+public class WindowedDoubleMostRecentlyInsertedQueue extends DoubleMostRecentlyInsertedQueue {
+
+    private double sum;
+    private double sumCompensation;
+    private double squaredDeviations;
+    private double squaredDeviationsCompensation;
+
+    private final MonotonicDeque minimums;
+    private final MonotonicDeque maximums;
+    // sequence of the next value offered and of the next value to leave the window
+    private long putSequence;
+    private long takeSequence;
+
+    public WindowedDoubleMostRecentlyInsertedQueue(int capacity) {
+        super(capacity);
+
+        this.minimums = new MonotonicDeque(capacity, true);
+        this.maximums = new MonotonicDeque(capacity, false);
+    }
+
+    @Override
+    protected void insertItem(double e) {
+        // evicts through poll() first when the window is full
+        super.insertItem(e);
+
+        double oldMean = mean(size() - 1);
+        addToSum(e);
+        addToSquaredDeviations((e - oldMean) * (e - mean(size())));
+
+        minimums.add(e, putSequence);
+        maximums.add(e, putSequence);
+        ++putSequence;
+    }
+
+    @Override
+    public double poll() {
+        double x = super.poll();
+
+        removed(x);
+
+        return x;
+    }
+
+    @Override
+    public int drainTo(double[] dst, int offset, int maxElements) {
+        int transferred = super.drainTo(dst, offset, maxElements);
+
+        for (int i = offset; i < offset + transferred; i++) {
+            removed(dst[i]);
+        }
+
+        return transferred;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+
+        reset();
+        takeSequence = putSequence;
+    }
+
+    // x has just left the window, which now holds size() values
+    private void removed(double x) {
+        minimums.remove(takeSequence);
+        maximums.remove(takeSequence);
+        ++takeSequence;
+
+        if (size() == 0) {
+            reset();
+            return;
+        }
+
+        double oldMean = mean(size() + 1);
+        addToSum(-x);
+        addToSquaredDeviations(-(x - oldMean) * (x - mean(size())));
+    }
+
+    private void reset() {
+        sum = 0;
+        sumCompensation = 0;
+        squaredDeviations = 0;
+        squaredDeviationsCompensation = 0;
+        minimums.clear();
+        maximums.clear();
+    }
+
+    // Neumaier's variant of Kahan summation, which also holds when the addend is larger than the running sum
+    private void addToSum(double x) {
+        double t = sum + x;
+
+        if (Math.abs(sum) >= Math.abs(x)) {
+            sumCompensation += (sum - t) + x;
+        } else {
+            sumCompensation += (x - t) + sum;
+        }
+        sum = t;
+    }
+
+    private void addToSquaredDeviations(double x) {
+        double t = squaredDeviations + x;
+
+        if (Math.abs(squaredDeviations) >= Math.abs(x)) {
+            squaredDeviationsCompensation += (squaredDeviations - t) + x;
+        } else {
+            squaredDeviationsCompensation += (x - t) + squaredDeviations;
+        }
+        squaredDeviations = t;
+    }
+
+    private double mean(int count) {
+        return (count == 0) ? 0 : sum() / count;
+    }
+
+    public double sum() {
+        return sum + sumCompensation;
+    }
+
+    /**
+     * @return the mean of the window, or NaN if the queue is empty
+     */
+    public double mean() {
+        return isEmpty() ? Double.NaN : sum() / size();
+    }
+
+    /**
+     * @return the population variance of the window, or NaN if the queue is empty
+     */
+    public double variance() {
+        if (isEmpty()) {
+            return Double.NaN;
+        }
+
+        return Math.max(0, squaredDeviations + squaredDeviationsCompensation) / size();
+    }
+
+    /**
+     * @return the population standard deviation of the window, or NaN if the queue is empty
+     */
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    /**
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public double min() {
+        if (isEmpty()) throw new NoSuchElementException();
+
+        return minimums.first();
+    }
+
+    /**
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public double max() {
+        if (isEmpty()) throw new NoSuchElementException();
+
+        return maximums.first();
+    }
+
+    /**
+     * Deque of the window values which can still become the min (or max): each value is dropped from the back as soon
+     * as a smaller (or larger) one is offered after it, so values are monotonic from front to back and the front is
+     * the min (or max) of the window. It never holds more values than the window, so a ring of the capacity is enough.
+     */
+    private static final class MonotonicDeque {
+        private final double[] values;
+        private final long[] sequences;
+        private final boolean minimum;
+        private int head;
+        private int count;
+
+        MonotonicDeque(int capacity, boolean minimum) {
+            this.values = new double[capacity];
+            this.sequences = new long[capacity];
+            this.minimum = minimum;
+        }
+
+        void add(double value, long sequence) {
+            while (count != 0 && dominates(value, values[lastIndex()])) {
+                --count;
+            }
+
+            int index = head + count;
+            if (index >= values.length) {
+                index -= values.length;
+            }
+            values[index] = value;
+            sequences[index] = sequence;
+            ++count;
+        }
+
+        // called for every value leaving the window, oldest first
+        void remove(long sequence) {
+            if (count != 0 && sequences[head] == sequence) {
+                head = (head + 1 == values.length) ? 0 : head + 1;
+                --count;
+            }
+        }
+
+        double first() {
+            return values[head];
+        }
+
+        void clear() {
+            head = 0;
+            count = 0;
+        }
+
+        private boolean dominates(double value, double other) {
+            return minimum ? value < other : value > other;
+        }
+
+        private int lastIndex() {
+            int index = head + count - 1;
+            return (index >= values.length) ? index - values.length : index;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Spins for a while, then yields the core between checks. Low latency without starving other threads that share the
+ * consumer's core, at the price of keeping that core busy.
+ */
+public class YieldingWaitStrategy extends SpinningWaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    protected void idle(int iteration) {
+        if (iteration < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+}
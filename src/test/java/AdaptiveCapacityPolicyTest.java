@@ -0,0 +1,105 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveCapacityPolicyTest {
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private MostRecentlyInsertedQueue<Integer> queue;
+    private AdaptiveCapacityPolicy policy;
+
+    @Before
+    public void createPolicy() {
+        queue = new MostRecentlyInsertedQueue<>(8);
+        policy = new AdaptiveCapacityPolicy(queue, queue.enableMetrics("adaptive-capacity-test"), 4, 32, 0.1, 0.25, 3);
+    }
+
+    @After
+    public void disableMetrics() {
+        queue.disableMetrics();
+    }
+
+    @Test
+    public void shouldGrowUpToMaxCapacity_whenQueueEvicts() {
+        for (int run = 0; run < 4; run++) {
+            for (int i = 0; i < 100; i++) {
+                queue.offer(i);
+            }
+            policy.run();
+        }
+
+        assertEquals(32, queue.capacity());
+        assertEquals(32, queue.size());
+    }
+
+    @Test
+    public void shouldNotResize_whenQueueEvictsRarely() {
+        for (int i = 0; i < 8; i++) {
+            queue.offer(i);
+        }
+        policy.run();
+        queue.clear();
+
+        for (int i = 0; i < 100; i++) {
+            queue.offer(i);
+            queue.poll();
+        }
+        policy.run();
+
+        assertEquals(8, queue.capacity());
+    }
+
+    @Test
+    public void shouldShrinkDownToMinCapacity_whenQueueStaysUnderused() {
+        queue.offer(0);
+
+        for (int run = 0; run < 2; run++) {
+            policy.run();
+        }
+        assertEquals(8, queue.capacity());
+
+        policy.run();
+        assertEquals(4, queue.capacity());
+
+        for (int run = 0; run < 6; run++) {
+            policy.run();
+        }
+        assertEquals(4, queue.capacity());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void shouldRestartUnderusedRuns_whenQueueFillsUp() {
+        policy.run();
+        policy.run();
+        for (int i = 0; i < 8; i++) {
+            queue.offer(i);
+        }
+        policy.run();
+        queue.clear();
+        policy.run();
+        policy.run();
+
+        assertEquals(8, queue.capacity());
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentException_whenMaxCapacityLowerThanMinCapacity() {
+        exception.expect(IllegalArgumentException.class);
+
+        new AdaptiveCapacityPolicy(queue, queue.getMetrics(), 8, 4);
+    }
+
+    @Test
+    public void shouldThrowIllegalArgumentException_whenMaxCapacityExceedsQueueLimit() {
+        exception.expect(IllegalArgumentException.class);
+
+        new AdaptiveCapacityPolicy(new ConcurrentMostRecentlyInsertedQueue<Integer>(4, 16), queue.getMetrics(), 4, 32);
+    }
+}
@@ -0,0 +1,189 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class BroadcastMostRecentlyInsertedQueueTest {
+
+    private final static int CAPACITY = 4;
+
+    private BroadcastMostRecentlyInsertedQueue<Integer> queue;
+
+    @Before
+    public void setUp() {
+        queue = new BroadcastMostRecentlyInsertedQueue<>(CAPACITY);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentException_whenCapacityLowerZero() {
+        new BroadcastMostRecentlyInsertedQueue<Integer>(-1);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void shouldThrowNullPointerException_whenOfferNull() {
+        queue.offer(null);
+    }
+
+    @Test
+    public void shouldReturnNull_whenReaderHasReadEverything() {
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader reader = queue.newReader();
+
+        assertNull(reader.poll());
+
+        queue.offer(1);
+        assertEquals(Integer.valueOf(1), reader.poll());
+        assertNull(reader.poll());
+    }
+
+    @Test
+    public void shouldDeliverEveryElementToEveryReader() {
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader first = queue.newReader();
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader second = queue.newReader();
+
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+
+        List<Integer> firstItems = new ArrayList<>();
+        List<Integer> secondItems = new ArrayList<>();
+
+        assertEquals(1, first.drainTo(firstItems, 1));
+        assertEquals(3, second.drainTo(secondItems, Integer.MAX_VALUE));
+        assertEquals(2, first.drainTo(firstItems, Integer.MAX_VALUE));
+
+        assertEquals(Arrays.asList(1, 2, 3), firstItems);
+        assertEquals(Arrays.asList(1, 2, 3), secondItems);
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void shouldStartNewReaderAtOldestRetainedElement() {
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader reader = queue.newReader();
+
+        assertEquals(2, reader.getSequence());
+        assertEquals(Integer.valueOf(3), reader.poll());
+        assertEquals(0, reader.missed());
+    }
+
+    @Test
+    public void shouldSkipAndCountMissedElements_whenReaderIsLapped() {
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader reader = queue.newReader();
+
+        for (int i = 1; i <= 7; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(7, reader.lag());
+        assertEquals(Integer.valueOf(4), reader.poll());
+        assertEquals(3, reader.missed());
+        assertEquals(Integer.valueOf(5), reader.poll());
+        assertEquals(3, reader.missed());
+    }
+
+    @Test
+    public void shouldNotAffectOtherReaders_whenOneReaderIsLapped() {
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader slow = queue.newReader();
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader fast = queue.newReader();
+
+        for (int i = 1; i <= 8; i++) {
+            queue.offer(i);
+            assertEquals(Integer.valueOf(i), fast.poll());
+        }
+
+        assertEquals(0, fast.missed());
+        assertEquals(Integer.valueOf(5), slow.poll());
+        assertEquals(4, slow.missed());
+    }
+
+    @Test
+    public void shouldCountOverwrittenStartSequenceAsMissed() {
+        for (int i = 1; i <= 6; i++) {
+            queue.offer(i);
+        }
+
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader reader = queue.newReader(0);
+
+        assertEquals(Integer.valueOf(3), reader.poll());
+        assertEquals(2, reader.missed());
+    }
+
+    @Test
+    public void shouldReturnNull_whenPollTimesOut() throws InterruptedException {
+        BroadcastMostRecentlyInsertedQueue<Integer>.Reader reader = queue.newReader();
+
+        assertNull(reader.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldTakeElement_whenPublishedAfterReadersWait() throws InterruptedException {
+        final int readers = 3;
+        final CountDownLatch done = new CountDownLatch(readers);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int r = 0; r < readers; r++) {
+            final BroadcastMostRecentlyInsertedQueue<Integer>.Reader reader = queue.newReader();
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        assertEquals(Integer.valueOf(42), reader.take());
+                    } catch (Throwable t) {
+                        failure.set(t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        Thread.sleep(50);
+        queue.put(42);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void shouldReadOnlyPublishedElementsInOrder_whenProducerLapsReader() throws InterruptedException {
+        final int count = 100000;
+        final BroadcastMostRecentlyInsertedQueue<Integer>.Reader reader = queue.newReader();
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    queue.offer(i);
+                }
+            }
+        });
+        producer.start();
+
+        long read = 0;
+        int last = -1;
+        while (producer.isAlive() || reader.lag() > 0) {
+            Integer item = reader.poll();
+            if (item != null) {
+                assertTrue(item > last);
+                assertEquals(item.longValue(), reader.getSequence() - 1);
+                last = item;
+                ++read;
+            }
+        }
+        producer.join();
+
+        assertEquals(count - 1, last);
+        assertEquals(count, read + reader.missed());
+    }
+}
@@ -5,8 +5,14 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class ConcurrentMostRecentlyInsertedQueueTest extends QueuesTest {
 
@@ -82,4 +88,160 @@ public class ConcurrentMostRecentlyInsertedQueueTest extends QueuesTest {
         Thread.sleep(SLEEP_TIME);
     }
 
+    @Test
+    public void shouldKeepNewestItems_whenOfferAllOverflows() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(3);
+        queue.offer(0);
+        queue.offer(1);
+
+        queue.offerAll(new Integer[]{2, 3}, 0, 2);
+        assertArrayEquals(new Integer[]{1, 2, 3}, queue.toArray(new Integer[0]));
+
+        queue.offerAll(new Integer[]{5, 6, 7, 8, 9}, 0, 5);
+        assertArrayEquals(new Integer[]{7, 8, 9}, queue.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldPollIntoArray_whenItemsAvailable() {
+        for (int i = 0; i < 5; i++) {
+            concurrentQueue.offer(i);
+        }
+
+        Integer[] items = new Integer[3];
+        assertEquals(3, ((ConcurrentMostRecentlyInsertedQueue<Integer>) concurrentQueue).pollInto(items, 0, 3));
+
+        assertArrayEquals(new Integer[]{0, 1, 2}, items);
+        assertEquals(2, concurrentQueue.size());
+    }
+
+    @Test
+    public void shouldCountOffersPollsAndEvictions_whenMetricsEnabled() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(3);
+        QueueMetrics metrics = queue.enableMetrics("concurrent-metrics-test");
+        try {
+            for (int i = 0; i < 5; i++) {
+                queue.offer(i);
+            }
+            queue.offerAll(new Integer[]{5, 6}, 0, 2);
+            queue.poll();
+            queue.pollInto(new Integer[3], 0, 3);
+
+            assertEquals(7, metrics.getOfferCount());
+            assertEquals(3, metrics.getPollCount());
+            assertEquals(4, metrics.getEvictionCount());
+            assertEquals(3, metrics.getHighWaterMark());
+            assertEquals(0, metrics.getContendedLockCount());
+        } finally {
+            queue.disableMetrics();
+        }
+    }
+
+    @Test
+    public void shouldCountLikeBlockingQueue_whenBatchExceedsCapacity() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(3);
+        MostRecentlyInsertedBlockingQueue<Integer> blockingQueue = new MostRecentlyInsertedBlockingQueue<>(3);
+        QueueMetrics metrics = queue.enableMetrics("concurrent-batch-metrics-test");
+        QueueMetrics blockingMetrics = blockingQueue.enableMetrics("blocking-batch-metrics-test");
+        try {
+            Integer[] batch = {1, 2, 3, 4, 5};
+            queue.offer(0);
+            queue.offerAll(batch, 0, batch.length);
+            blockingQueue.offer(0);
+            blockingQueue.offerAll(batch, 0, batch.length);
+
+            assertEquals(6, metrics.getOfferCount());
+            assertEquals(3, metrics.getEvictionCount());
+            assertEquals(blockingMetrics.getOfferCount(), metrics.getOfferCount());
+            assertEquals(blockingMetrics.getEvictionCount(), metrics.getEvictionCount());
+            assertEquals(blockingMetrics.getHighWaterMark(), metrics.getHighWaterMark());
+        } finally {
+            queue.disableMetrics();
+            blockingQueue.disableMetrics();
+        }
+    }
+
+    @Test
+    public void shouldKeepNewestItems_whenCapacityChanged() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(2, 4);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        assertArrayEquals(new Integer[]{3, 4}, queue.toArray(new Integer[0]));
+
+        queue.setCapacity(4);
+        for (int i = 5; i < 8; i++) {
+            queue.offer(i);
+        }
+        assertArrayEquals(new Integer[]{4, 5, 6, 7}, queue.toArray(new Integer[0]));
+
+        queue.setCapacity(1);
+        assertEquals(1, queue.capacity());
+        assertArrayEquals(new Integer[]{7}, queue.toArray(new Integer[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentException_whenCapacityExceedsMaxCapacity() {
+        new ConcurrentMostRecentlyInsertedQueue<Integer>(2, 4).setCapacity(5);
+    }
+
+    @Test
+    public void shouldStreamSizedSnapshot_whenRingWrapsAround() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(1000);
+        for (int i = 0; i < 1700; i++) {
+            queue.offer(i);
+        }
+
+        Spliterator<Integer> spliterator = queue.spliterator();
+        assertEquals(1000, spliterator.getExactSizeIfKnown());
+        assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.NONNULL));
+
+        assertEquals(IntStream.range(700, 1700).boxed().collect(Collectors.toList()),
+                queue.parallelStream().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldReadHistoryAcrossTiers_whenBatchOverflowsQueue() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(3, 6);
+        queue.setOverflowTier(new OverflowTier<>(10, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC,
+                Runnable::run));
+
+        queue.offer(0);
+        queue.offer(1);
+        queue.offerAll(new Integer[]{2, 3, 4, 5, 6}, 0, 5);
+        assertEquals(IntStream.range(0, 7).boxed().collect(Collectors.toList()), queue.history(10));
+
+        queue.offer(7);
+        queue.setCapacity(2);
+        assertEquals(IntStream.range(4, 8).boxed().collect(Collectors.toList()), queue.history(4));
+        assertEquals(6, queue.getOverflowTier().size());
+    }
+
+    @Test(timeout = 5000)
+    public void shouldKeepNewestElement_whenCapacityIsOne() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(1);
+        queue.offer(1);
+        queue.offer(2);
+
+        assertEquals(1, queue.size());
+        assertEquals(2, (int) queue.peek());
+        assertEquals(2, (int) queue.poll());
+        assertNull(queue.poll());
+
+        queue.offerAll(new Integer[]{3, 4, 5}, 0, 3);
+        Integer[] dst = new Integer[2];
+        assertEquals(1, queue.pollInto(dst, 0, 2));
+        assertEquals(5, (int) dst[0]);
+    }
+
+    @Test(timeout = 5000)
+    public void shouldKeepNewestElement_whenMaxCapacityIsOne() {
+        ConcurrentMostRecentlyInsertedQueue<Integer> queue = new ConcurrentMostRecentlyInsertedQueue<>(1, 1);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(1, queue.size());
+        assertEquals(4, (int) queue.poll());
+        assertTrue(queue.isEmpty());
+    }
 }
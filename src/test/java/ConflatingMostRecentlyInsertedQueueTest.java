@@ -0,0 +1,175 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class ConflatingMostRecentlyInsertedQueueTest extends QueuesTest {
+
+    private final static int KEYS = 10;
+
+    @Override
+    Queue<Integer> initQueue(int capacity) {
+        return new ConflatingMostRecentlyInsertedQueue<Integer, Integer>(capacity, Function.identity());
+    }
+
+    // elements with the same last digit conflate
+    private static ConflatingMostRecentlyInsertedQueue<Integer, Integer> lastDigitQueue(int capacity) {
+        return new ConflatingMostRecentlyInsertedQueue<>(capacity, new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer e) {
+                return e % KEYS;
+            }
+        });
+    }
+
+    @Test
+    public void shouldReplaceInPlace_whenKeyAlreadyInWindow() {
+        ConflatingMostRecentlyInsertedQueue<Integer, Integer> queue = lastDigitQueue(3);
+
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(11);
+        queue.offer(21);
+
+        assertEquals(2, queue.size());
+        assertEquals(Integer.valueOf(21), queue.get(1));
+        assertArrayEquals(new Integer[]{21, 2}, queue.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldKeepOneEntryPerKey_whenHeadEvicted() {
+        ConflatingMostRecentlyInsertedQueue<Integer, Integer> queue = lastDigitQueue(3);
+
+        for (int i = 1; i <= 4; i++) {
+            queue.offer(i);
+        }
+        assertNull(queue.get(1));
+
+        queue.offer(11);
+        queue.offer(14);
+
+        assertArrayEquals(new Integer[]{3, 14, 11}, queue.toArray(new Integer[0]));
+        assertFalse(queue.contains(4));
+        assertTrue(queue.contains(14));
+    }
+
+    @Test
+    public void shouldCloseGap_whenMiddleItemRemoved() {
+        ConflatingMostRecentlyInsertedQueue<Integer, Integer> queue = lastDigitQueue(4);
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+        }
+
+        assertFalse(queue.remove(13));
+        assertTrue(queue.remove(3));
+        queue.offer(13);
+        queue.offer(14);
+
+        assertArrayEquals(new Integer[]{2, 14, 5, 13}, queue.toArray(new Integer[0]));
+        assertEquals(Integer.valueOf(14), queue.get(4));
+    }
+
+    @Test
+    public void shouldMatchReferenceModel_whenRandomOperations() {
+        // keys are multiples of the index length, so they all collide and deletions shift the probe runs
+        ConflatingMostRecentlyInsertedQueue<Integer, Integer> queue = new ConflatingMostRecentlyInsertedQueue<>(7,
+                new Function<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer e) {
+                        return e % KEYS * 16;
+                    }
+                });
+        List<Integer> model = new ArrayList<>();
+        Random random = new Random(18);
+
+        for (int i = 0; i < 20000; i++) {
+            int op = random.nextInt(10);
+            Integer e = random.nextInt(1000);
+
+            if (op < 6) {
+                queue.offer(e);
+                offer(model, e, 7);
+            } else if (op < 8) {
+                assertEquals(model.isEmpty() ? null : model.remove(0), queue.poll());
+            } else if (!model.isEmpty()) {
+                Integer removed = model.remove(random.nextInt(model.size()));
+                assertTrue(queue.remove(removed));
+            }
+
+            assertArrayEquals(model.toArray(), queue.toArray());
+            for (int key = 0; key < KEYS; key++) {
+                assertEquals(find(model, key), queue.get(key * 16));
+            }
+        }
+    }
+
+    private static void offer(List<Integer> model, Integer e, int capacity) {
+        for (int i = 0; i < model.size(); i++) {
+            if (model.get(i) % KEYS == e % KEYS) {
+                model.set(i, e);
+                return;
+            }
+        }
+        if (model.size() == capacity) {
+            model.remove(0);
+        }
+        model.add(e);
+    }
+
+    private static Integer find(List<Integer> model, int key) {
+        for (Integer e : model) {
+            if (e % KEYS == key) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void shouldTakeItem_whenOfferedByAnotherThread() throws InterruptedException {
+        final ConflatingMostRecentlyInsertedQueue<Integer, Integer> queue = lastDigitQueue(3);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                queue.offer(7);
+            }
+        }).start();
+
+        assertEquals(Integer.valueOf(7), queue.take());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldReturnFalse_whenObjectIsOfForeignType() {
+        ConflatingMostRecentlyInsertedQueue<Integer, Integer> queue = lastDigitQueue(3);
+
+        queue.offer(1);
+
+        assertFalse(queue.contains("1"));
+        assertFalse(queue.remove("1"));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void shouldThrowNPE_whenKeyIsNull() {
+        exception.expect(NullPointerException.class);
+
+        new ConflatingMostRecentlyInsertedQueue<Integer, Integer>(3, new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer e) {
+                return null;
+            }
+        }).offer(1);
+    }
+}
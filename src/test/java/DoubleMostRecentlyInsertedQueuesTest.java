@@ -0,0 +1,126 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DoubleMostRecentlyInsertedQueuesTest {
+
+    private final static int CAPACITY = 5;
+    private final static int SLEEP_TIME = 50;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void shouldEvictOldestValue_whenSizeEqualsCapacity() {
+        DoubleMostRecentlyInsertedQueue queue = new DoubleMostRecentlyInsertedQueue(CAPACITY);
+        for (int i = 0; i <= CAPACITY; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(CAPACITY, queue.size());
+        assertEquals(1, queue.peek(), 0);
+    }
+
+    @Test
+    public void shouldThrowNoSuchElementException_whenPollEmptyQueue() {
+        exception.expect(NoSuchElementException.class);
+        new DoubleMostRecentlyInsertedQueue(CAPACITY).poll();
+    }
+
+    @Test
+    public void shouldReturnDefault_whenPollOrDefaultOnEmptyQueue() {
+        assertEquals(-1, new DoubleMostRecentlyInsertedQueue(CAPACITY).pollOrDefault(-1), 0);
+        assertEquals(-1, new ConcurrentDoubleMostRecentlyInsertedQueue(CAPACITY).pollOrDefault(-1), 0);
+        assertEquals(-1, new DoubleMostRecentlyInsertedBlockingQueue(CAPACITY).pollOrDefault(-1), 0);
+    }
+
+    @Test
+    public void shouldDrainWrappedRingInOrder() {
+        DoubleMostRecentlyInsertedQueue queue = new DoubleMostRecentlyInsertedQueue(CAPACITY);
+        for (int i = 0; i < CAPACITY + 3; i++) {
+            queue.offer(i);
+        }
+
+        double[] values = new double[CAPACITY + 1];
+        assertEquals(CAPACITY, queue.drainTo(values, 1, CAPACITY));
+
+        assertArrayEquals(new double[]{0, 3, 4, 5, 6, 7}, values, 0);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldConcurrentQueueEvictOldestValue_whenSizeEqualsCapacity() {
+        ConcurrentDoubleMostRecentlyInsertedQueue queue = new ConcurrentDoubleMostRecentlyInsertedQueue(CAPACITY);
+        for (int i = 0; i <= CAPACITY; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(CAPACITY, queue.size());
+        assertEquals(1, queue.poll(), 0);
+        assertEquals(2, queue.peek(), 0);
+    }
+
+    @Test
+    public void shouldConcurrentQueueKeepCapacity_whenThreadsOfferValues() throws InterruptedException {
+        final ConcurrentDoubleMostRecentlyInsertedQueue queue = new ConcurrentDoubleMostRecentlyInsertedQueue(CAPACITY);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) queue.offer(j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(CAPACITY, queue.size());
+        assertEquals(CAPACITY, queue.drainTo(new double[CAPACITY * 2]));
+    }
+
+    @Test
+    public void shouldBlockingQueueTakeValue_whenQueueBecomesNotEmpty() throws InterruptedException {
+        final DoubleMostRecentlyInsertedBlockingQueue queue = new DoubleMostRecentlyInsertedBlockingQueue(CAPACITY);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(SLEEP_TIME);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                queue.put(42);
+            }
+        }).start();
+
+        assertEquals(42, queue.take(), 0);
+    }
+
+    @Test
+    public void shouldBlockingQueueReturnDefault_whenPollTimesOut() throws InterruptedException {
+        DoubleMostRecentlyInsertedBlockingQueue queue = new DoubleMostRecentlyInsertedBlockingQueue(CAPACITY);
+
+        assertEquals(-1, queue.pollOrDefault(SLEEP_TIME, TimeUnit.MILLISECONDS, -1), 0);
+    }
+
+    @Test(timeout = 5000)
+    public void shouldConcurrentQueueKeepNewestValue_whenCapacityIsOne() {
+        ConcurrentDoubleMostRecentlyInsertedQueue queue = new ConcurrentDoubleMostRecentlyInsertedQueue(1);
+        queue.offer(1);
+        queue.offer(2);
+
+        assertEquals(1, queue.size());
+        assertEquals(2, queue.peek(), 0);
+        assertEquals(2, queue.pollOrDefault(-1), 0);
+        assertEquals(-1, queue.pollOrDefault(-1), 0);
+    }
+}
@@ -0,0 +1,151 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+public class MappedMostRecentlyInsertedQueueTest extends QueuesTest {
+
+    private final static int CAPACITY = 5;
+
+    static final RecordCodec<Integer> INTEGER_CODEC = new RecordCodec<Integer>() {
+        @Override
+        public int recordSize() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer e, ByteBuffer buffer) {
+            buffer.putInt(e);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    @Override
+    Queue<Integer> initQueue(int capacity) {
+        try {
+            return new MappedMostRecentlyInsertedQueue<>(newFile(), capacity, INTEGER_CODEC);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path newFile() throws IOException {
+        Path file = Files.createTempFile("queue", ".mapped");
+        Files.delete(file);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void shouldRestoreWindow_whenFileReopened() throws IOException {
+        Path file = newFile();
+        MappedMostRecentlyInsertedQueue<Integer> queue = new MappedMostRecentlyInsertedQueue<>(file, CAPACITY, INTEGER_CODEC);
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            queue.offer(i);
+        }
+        queue.poll();
+        queue.close();
+
+        MappedMostRecentlyInsertedQueue<Integer> reopened = new MappedMostRecentlyInsertedQueue<>(file, CAPACITY, INTEGER_CODEC);
+
+        assertEquals(CAPACITY - 1, reopened.size());
+        assertArrayEquals(new Integer[]{3, 4, 5, 6}, reopened.toArray(new Integer[0]));
+
+        reopened.offer(7);
+        reopened.offer(8);
+        assertEquals(Integer.valueOf(4), reopened.peek());
+    }
+
+    @Test
+    public void shouldThrowIOException_whenReopenedWithOtherCapacity() throws IOException {
+        Path file = newFile();
+        new MappedMostRecentlyInsertedQueue<>(file, CAPACITY, INTEGER_CODEC).close();
+
+        exception.expect(IOException.class);
+        new MappedMostRecentlyInsertedQueue<>(file, CAPACITY + 1, INTEGER_CODEC);
+    }
+
+    @Test
+    public void shouldAppendAfterWindow_whenReopenedWithMovedHead() throws IOException {
+        Path file = newFile();
+        MappedMostRecentlyInsertedQueue<Integer> queue = new MappedMostRecentlyInsertedQueue<>(file, CAPACITY,
+                INTEGER_CODEC);
+        for (int i = 0; i < CAPACITY; i++) {
+            queue.offer(i);
+        }
+        queue.close();
+
+        // head at 1 and size 2, as left by a process killed after its header update
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putInt(1).putInt(2).flip(), 16);
+        }
+
+        MappedMostRecentlyInsertedQueue<Integer> reopened = new MappedMostRecentlyInsertedQueue<>(file, CAPACITY,
+                INTEGER_CODEC);
+        reopened.offer(9);
+
+        assertArrayEquals(new Integer[]{1, 2, 9}, reopened.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldThrowIOException_whenHeaderIsCorrupted() throws IOException {
+        Path file = newFile();
+        new MappedMostRecentlyInsertedQueue<>(file, CAPACITY, INTEGER_CODEC).close();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putInt(0).putInt(CAPACITY + 1).flip(), 16);
+        }
+
+        exception.expect(IOException.class);
+        new MappedMostRecentlyInsertedQueue<>(file, CAPACITY, INTEGER_CODEC);
+    }
+
+    @Test
+    public void shouldKeepOtherRecords_whenCodecWritesTooMuch() throws IOException {
+        // writes a long into records sized for an int, for the negative values only
+        RecordCodec<Integer> oversizedCodec = new RecordCodec<Integer>() {
+            @Override
+            public int recordSize() {
+                return Integer.BYTES;
+            }
+
+            @Override
+            public void encode(Integer e, ByteBuffer buffer) {
+                if (e < 0) {
+                    buffer.putLong(e);
+                } else {
+                    buffer.putInt(e);
+                }
+            }
+
+            @Override
+            public Integer decode(ByteBuffer buffer) {
+                return buffer.getInt();
+            }
+        };
+        MappedMostRecentlyInsertedQueue<Integer> queue = new MappedMostRecentlyInsertedQueue<>(newFile(), 3,
+                oversizedCodec);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(i);
+        }
+
+        try {
+            queue.offer(-1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertArrayEquals(new Integer[]{0, 1, 2}, queue.toArray(new Integer[0]));
+    }
+}
@@ -1,9 +1,33 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -177,4 +201,1032 @@ public class MostRecentlyInsertedBlockingQueueTest extends QueuesTest {
         assertTrue(blockingQueue.contains(expected));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldKeepNewestItems_whenOfferAllOverflows() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        queue.offer(0);
+        queue.offer(1);
+
+        queue.offerAll(new Integer[]{2, 3, 4}, 0, 3);
+        assertArrayEquals(new Integer[]{2, 3, 4}, queue.toArray(new Integer[0]));
+
+        queue.offerAll(new Integer[]{5, 6, 7, 8, 9}, 0, 5);
+        assertArrayEquals(new Integer[]{7, 8, 9}, queue.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldPollIntoArray_whenRingWrapsAround() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        Integer[] items = new Integer[2];
+        assertEquals(2, queue.pollInto(items, 0, 2));
+
+        assertArrayEquals(new Integer[]{2, 3}, items);
+        assertEquals(Integer.valueOf(4), queue.peek());
+    }
+
+    @Test
+    public void shouldDrainItemsInOrder_whenRingWrapsAround() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, queue.drainTo(drained, 2));
+        assertEquals(1, queue.drainTo(drained));
+
+        assertEquals(Arrays.asList(2, 3, 4), drained);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void shouldAcceptItem_whenOfferWithTimeoutOnFullQueue() throws InterruptedException {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(1);
+        queue.put(1);
+
+        assertTrue(queue.offer(2, SLEEP_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(2), queue.peek());
+    }
+
+    @Test
+    public void shouldTakeItem_withEveryWaitStrategy() throws InterruptedException {
+        for (WaitStrategy waitStrategy : waitStrategies()) {
+            final MostRecentlyInsertedBlockingQueue<Integer> queue =
+                    new MostRecentlyInsertedBlockingQueue<>(CAPACITY, waitStrategy);
+            final Integer expectedItem = new Random().nextInt();
+
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(SLEEP_TIME);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    queue.put(expectedItem);
+                }
+            });
+            producer.start();
+
+            assertEquals(expectedItem, queue.take());
+            producer.join();
+        }
+    }
+
+    @Test
+    public void shouldReturnNull_whenPollTimesOutWithEveryWaitStrategy() throws InterruptedException {
+        for (WaitStrategy waitStrategy : waitStrategies()) {
+            MostRecentlyInsertedBlockingQueue<Integer> queue =
+                    new MostRecentlyInsertedBlockingQueue<>(CAPACITY, waitStrategy);
+
+            long start = System.nanoTime();
+            assertNull(queue.poll(SLEEP_TIME, TimeUnit.MILLISECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(SLEEP_TIME));
+        }
+    }
+
+    @Test
+    public void shouldThrowInterruptedException_whenTakeInterrupted() throws InterruptedException {
+        for (WaitStrategy waitStrategy : waitStrategies()) {
+            final MostRecentlyInsertedBlockingQueue<Integer> queue =
+                    new MostRecentlyInsertedBlockingQueue<>(CAPACITY, waitStrategy);
+            final boolean[] interrupted = new boolean[1];
+
+            Thread consumer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        queue.take();
+                    } catch (InterruptedException e) {
+                        interrupted[0] = true;
+                    }
+                }
+            });
+            consumer.start();
+            Thread.sleep(SLEEP_TIME);
+            consumer.interrupt();
+            consumer.join();
+
+            assertTrue(interrupted[0]);
+        }
+    }
+
+    private static WaitStrategy[] waitStrategies() {
+        return new WaitStrategy[]{new BlockingWaitStrategy(), new SleepingWaitStrategy(), new YieldingWaitStrategy(),
+                new BusySpinWaitStrategy(), new SpinThenParkWaitStrategy()};
+    }
+
+    @Test
+    public void shouldReturnNewestItemsInOrder_whenLatestOnWrappedRing() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        for (int i = 0; i < 7; i++) {
+            queue.put(i);
+        }
+
+        assertEquals(Arrays.asList(4, 5, 6), queue.latest(3));
+        assertEquals(Arrays.asList(3, 4, 5, 6), queue.latest(10));
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    public void shouldCopyNewestItems_whenSnapshotIntoSmallerArray() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        for (int i = 0; i < 3; i++) {
+            queue.put(i);
+        }
+
+        Integer[] window = new Integer[2];
+        assertEquals(2, queue.snapshot(window));
+        assertArrayEquals(new Integer[]{1, 2}, window);
+
+        Integer[] whole = new Integer[5];
+        assertEquals(3, queue.snapshot(whole));
+        assertArrayEquals(new Integer[]{0, 1, 2, null, null}, whole);
+    }
+
+    @Test
+    public void shouldReadConsistentWindow_whenProducersOfferConcurrently() throws InterruptedException {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(8);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100000; i++) queue.put(i);
+            }
+        });
+        producer.start();
+
+        Integer[] window = new Integer[8];
+        while (producer.isAlive()) {
+            int copied = queue.snapshot(window);
+            for (int i = 1; i < copied; i++) {
+                assertEquals(window[i - 1] + 1, (int) window[i]);
+            }
+        }
+        producer.join();
+    }
+
+    @Test
+    public void shouldNotReturnExpiredItems_whenMaxAgeElapsed() throws InterruptedException {
+        final long[] now = {0};
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4,
+                new BlockingWaitStrategy(), 10, TimeUnit.NANOSECONDS, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return now[0];
+            }
+        });
+
+        queue.put(0);
+        now[0] = 5;
+        queue.put(1);
+        queue.put(2);
+
+        now[0] = 10;
+        assertEquals(Integer.valueOf(1), queue.peek());
+        assertEquals(Arrays.asList(1, 2), queue.latest(4));
+        assertFalse(queue.contains(0));
+        assertEquals(Integer.valueOf(1), queue.poll(0, TimeUnit.MILLISECONDS));
+
+        now[0] = 15;
+        assertNull(queue.peek());
+        assertEquals(0, queue.latest(4).size());
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void shouldWaitForFreshItem_whenOnlyExpiredItemsQueued() throws InterruptedException {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue =
+                new MostRecentlyInsertedBlockingQueue<>(4, 20, TimeUnit.MILLISECONDS);
+        queue.put(0);
+        Thread.sleep(40);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.put(1);
+            }
+        }).start();
+
+        assertEquals(Integer.valueOf(1), queue.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldCompleteTakeAsync_whenItemOffered() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        queue.put(1);
+
+        assertEquals(Integer.valueOf(1), queue.takeAsync().getNow(null));
+
+        CompletableFuture<Integer> first = queue.takeAsync();
+        CompletableFuture<Integer> second = queue.takeAsync();
+        assertFalse(first.isDone());
+
+        queue.put(2);
+        queue.put(3);
+        queue.put(4);
+
+        assertEquals(Integer.valueOf(2), first.getNow(null));
+        assertEquals(Integer.valueOf(3), second.getNow(null));
+        assertEquals(Arrays.asList(4), queue.latest(4));
+    }
+
+    @Test
+    public void shouldNotLoseItem_whenAsyncWaiterCancelledOrTimedOut() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+
+        CompletableFuture<Integer> cancelled = queue.takeAsync();
+        CompletableFuture<Integer> timedOut = queue.pollAsync(10, TimeUnit.MILLISECONDS);
+        CompletableFuture<Integer> waiting = queue.takeAsync();
+
+        assertTrue(cancelled.cancel(false));
+        assertNull(timedOut.get(5, TimeUnit.SECONDS));
+
+        queue.offer(1);
+        queue.offerAll(new Integer[]{2, 3}, 0, 2);
+
+        assertEquals(Integer.valueOf(1), waiting.getNow(null));
+        assertEquals(Arrays.asList(2, 3), queue.latest(4));
+    }
+
+    @Test
+    public void shouldCompleteEveryAsyncWaiterOnce_whenProducersOfferConcurrently() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(CAPACITY);
+        final int waiters = THREADS_NUMBERS * NUMBER_ITEMS;
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < waiters; i++) {
+            futures.add(queue.pollAsync(1, TimeUnit.MINUTES));
+        }
+
+        Thread[] producers = new Thread[THREADS_NUMBERS];
+        for (int t = 0; t < THREADS_NUMBERS; t++) {
+            final int base = t * NUMBER_ITEMS;
+            producers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < NUMBER_ITEMS; i++) {
+                        queue.put(base + i);
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        boolean[] seen = new boolean[waiters];
+        for (CompletableFuture<Integer> future : futures) {
+            int item = future.get(5, TimeUnit.SECONDS);
+            assertFalse(seen[item]);
+            seen[item] = true;
+        }
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void shouldRecordMetricsAndExposeThemOverJmx_whenMetricsEnabled() throws Exception {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(2);
+        QueueMetrics metrics = queue.enableMetrics("blocking-metrics-test");
+        try {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(SLEEP_TIME);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    queue.put(0);
+                }
+            }).start();
+            assertEquals(Integer.valueOf(0), queue.take());
+
+            queue.put(1);
+            queue.put(2);
+            queue.put(3);
+            queue.drainTo(new ArrayList<Integer>());
+
+            assertEquals(4, metrics.getOfferCount());
+            assertEquals(3, metrics.getPollCount());
+            assertEquals(1, metrics.getEvictionCount());
+            assertEquals(2, metrics.getHighWaterMark());
+
+            long waits = 0;
+            for (long count : metrics.getWaitTimeHistogram()) waits += count;
+            assertEquals(1, waits);
+
+            long lockHolds = 0;
+            for (long count : metrics.getLockHoldTimeHistogram()) lockHolds += count;
+            assertTrue(lockHolds >= 5);
+
+            ObjectName name = new ObjectName("Queues:type=MostRecentlyInsertedBlockingQueue,name="
+                    + ObjectName.quote("blocking-metrics-test"));
+            assertEquals(4L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "OfferCount"));
+        } finally {
+            queue.disableMetrics();
+        }
+    }
+
+    @Test
+    public void shouldEmitFlightRecorderEvents_whenRecordingEnabled() throws Exception {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(2);
+        queue.setName("jfr-test");
+        Path file = Files.createTempFile("queues", ".jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable("queues.EvictionBurst");
+            recording.enable("queues.Drain");
+            recording.start();
+
+            for (int i = 0; i < EvictionBurstEvent.BURST_SIZE + 2; i++) {
+                queue.offer(i);
+            }
+            queue.drainTo(new ArrayList<Integer>());
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        long evicted = 0;
+        int drained = 0;
+        try {
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (!"jfr-test".equals(event.getString("queue"))) {
+                    continue;
+                }
+                assertEquals(2, event.getInt("capacity"));
+                if (event.getEventType().getName().equals("queues.EvictionBurst")) {
+                    evicted += event.getLong("evicted");
+                } else {
+                    drained += event.getInt("drained");
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+
+        assertEquals(EvictionBurstEvent.BURST_SIZE, evicted);
+        assertEquals(2, drained);
+    }
+
+    @Test
+    public void shouldKeepNewestItems_whenCapacityChanged() throws InterruptedException {
+        final long[] now = {0};
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4,
+                new BlockingWaitStrategy(), 10, TimeUnit.NANOSECONDS, new LongSupplier() {
+            @Override
+            public long getAsLong() {
+                return now[0];
+            }
+        });
+        for (int i = 0; i < 6; i++) {
+            now[0] = i;
+            queue.offer(i);
+        }
+
+        queue.setCapacity(3);
+        assertEquals(3, queue.capacity());
+        assertArrayEquals(new Integer[]{3, 4, 5}, queue.toArray(new Integer[0]));
+
+        queue.setCapacity(5);
+        queue.offer(6);
+        queue.offer(7);
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7), queue.latest(5));
+
+        // timestamps moved along with their elements
+        now[0] = 14;
+        assertEquals(Integer.valueOf(5), queue.take());
+    }
+
+    @Test
+    public void shouldReadConsistentWindow_whenCapacityChangedConcurrently() throws InterruptedException {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(8);
+        final boolean[] failed = {false};
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Integer[] window = new Integer[16];
+                for (int i = 0; i < 20000; i++) {
+                    int copied = queue.snapshot(window);
+                    for (int j = 1; j < copied; j++) {
+                        if (window[j] != window[j - 1] + 1) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            }
+        });
+
+        reader.start();
+        for (int i = 0; reader.isAlive(); i++) {
+            queue.offer(i);
+            if (i % 100 == 0) {
+                queue.setCapacity((i / 100) % 2 == 0 ? 4 : 16);
+            }
+        }
+        reader.join();
+
+        assertFalse(failed[0]);
+    }
+
+    @Test
+    public void shouldKeepIteratingAfterRemovedItem_whenRemovedThroughIterator() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5);
+        for (int i = 0; i < 7; i++) {
+            queue.offer(i);
+        }
+
+        Iterator<Integer> iterator = queue.iterator();
+        List<Integer> iterated = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Integer item = iterator.next();
+            iterated.add(item);
+            if (item == 3 || item == 5) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(Arrays.asList(2, 3, 4, 5, 6), iterated);
+        assertArrayEquals(new Integer[]{2, 4, 6}, queue.toArray(new Integer[0]));
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void shouldRemoveOldestOccurrence_whenItemRemoved() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(6);
+        queue.addAll(Arrays.asList(1, 2, 1, 3, 4, 5));
+
+        assertTrue(queue.remove(1));
+        assertTrue(queue.remove(4));
+        assertFalse(queue.remove(7));
+        queue.offer(6);
+
+        assertArrayEquals(new Integer[]{2, 1, 3, 5, 6}, queue.toArray(new Integer[0]));
+        assertEquals(Arrays.asList(3, 5, 6), queue.latest(3));
+    }
+
+    @Test
+    public void shouldMatchReferenceModel_whenIndexEnabled() throws InterruptedException {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(16);
+        queue.offer(1);
+        queue.enableIndex();
+        assertTrue(queue.isIndexed());
+
+        List<Integer> model = new ArrayList<>(Arrays.asList(1));
+        Random random = new Random(19);
+
+        for (int i = 0; i < 20000; i++) {
+            int op = random.nextInt(10);
+            Integer e = random.nextInt(24);
+
+            if (op < 4) {
+                queue.offer(e);
+                model.add(e);
+            } else if (op < 5) {
+                Integer[] batch = {e, e + 1, random.nextInt(24)};
+                queue.offerAll(batch, 0, batch.length);
+                model.addAll(Arrays.asList(batch));
+            } else if (op < 6) {
+                assertEquals(model.isEmpty() ? null : model.remove(0), queue.poll());
+            } else if (op < 7) {
+                List<Integer> drained = new ArrayList<>();
+                queue.drainTo(drained, 2);
+                assertEquals(new ArrayList<>(model.subList(0, drained.size())), drained);
+                model.subList(0, drained.size()).clear();
+            } else {
+                assertEquals(model.remove(e), queue.remove(e));
+            }
+            while (model.size() > 16) {
+                model.remove(0);
+            }
+
+            assertArrayEquals(model.toArray(), queue.toArray());
+            Integer probe = random.nextInt(24);
+            assertEquals(model.contains(probe), queue.contains(probe));
+        }
+    }
+
+    @Test
+    public void shouldRemoveOldestDuplicate_whenIndexEnabled() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(8);
+        queue.enableIndex();
+        List<Integer> model = new ArrayList<>();
+        Random random = new Random(23);
+
+        for (int i = 0; i < 20000; i++) {
+            int op = random.nextInt(8);
+            Integer e = random.nextInt(4);
+
+            if (op < 4) {
+                queue.offer(e);
+                model.add(e);
+                if (model.size() > 8) {
+                    model.remove(0);
+                }
+            } else if (op < 5) {
+                assertEquals(model.isEmpty() ? null : model.remove(model.size() - 1), queue.pollLast());
+            } else if (op < 6 && !model.isEmpty()) {
+                int position = random.nextInt(model.size());
+                Iterator<Integer> iterator = queue.iterator();
+                for (int j = 0; j <= position; j++) {
+                    iterator.next();
+                }
+                iterator.remove();
+                model.remove(position);
+            } else {
+                assertEquals(model.remove(e), queue.remove(e));
+            }
+
+            assertArrayEquals(model.toArray(), queue.toArray());
+        }
+    }
+
+    @Test
+    public void shouldKeepIndexConsistent_whenCapacityChanged() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        queue.enableIndex();
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+        }
+
+        queue.setCapacity(2);
+        assertFalse(queue.contains(3));
+        assertTrue(queue.remove(5));
+        queue.offer(6);
+
+        assertArrayEquals(new Integer[]{4, 6}, queue.toArray(new Integer[0]));
+        assertTrue(queue.contains(4));
+    }
+
+    @Test
+    public void shouldRestoreWindow_whenCheckpointed() throws IOException {
+        Path file = Files.createTempFile("queue", ".checkpoint");
+        file.toFile().deleteOnExit();
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(40000);
+        for (int i = 0; i < 50000; i++) {
+            queue.offer(i);
+        }
+        queue.poll();
+
+        queue.checkpoint(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+        MostRecentlyInsertedBlockingQueue<Integer> restored = new MostRecentlyInsertedBlockingQueue<>(40000);
+        restored.offer(-1);
+        restored.restore(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+        assertArrayEquals(queue.toArray(), restored.toArray());
+        assertEquals(Integer.valueOf(10001), restored.peek());
+    }
+
+    @Test
+    public void shouldKeepNewestItems_whenRestoredIntoSmallerQueue() throws IOException {
+        Path file = Files.createTempFile("queue", ".checkpoint");
+        file.toFile().deleteOnExit();
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5);
+        for (int i = 0; i < 7; i++) {
+            queue.offer(i);
+        }
+        queue.checkpoint(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+        MostRecentlyInsertedBlockingQueue<Integer> restored = new MostRecentlyInsertedBlockingQueue<>(3);
+        restored.restore(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+        assertArrayEquals(new Integer[]{4, 5, 6}, restored.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldNotInterleaveConcurrentOffers_whenRestoring() throws Exception {
+        Path file = Files.createTempFile("queue", ".checkpoint");
+        file.toFile().deleteOnExit();
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(i);
+        }
+        queue.checkpoint(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+        final MostRecentlyInsertedBlockingQueue<Integer> restored = new MostRecentlyInsertedBlockingQueue<>(100000);
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    restored.offer(-1);
+                }
+            }
+        });
+
+        producer.start();
+        try {
+            for (int round = 0; round < 20; round++) {
+                restored.restore(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+                Object[] window = restored.toArray();
+                assertEquals(0, window[0]);
+                assertArrayEquals(queue.toArray(), Arrays.copyOf(window, 1000));
+            }
+        } finally {
+            stop.set(true);
+            producer.join();
+        }
+    }
+
+    @Test
+    public void shouldCompleteAsyncWaiter_whenRestoringIntoEmptyQueue() throws Exception {
+        Path file = Files.createTempFile("queue", ".checkpoint");
+        file.toFile().deleteOnExit();
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(i);
+        }
+        queue.checkpoint(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+        MostRecentlyInsertedBlockingQueue<Integer> restored = new MostRecentlyInsertedBlockingQueue<>(5);
+        CompletableFuture<Integer> waiter = restored.takeAsync();
+        restored.restore(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+        assertEquals(0, (int) waiter.get(1, TimeUnit.SECONDS));
+        assertArrayEquals(new Integer[]{1, 2}, restored.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldKeepPreviousCheckpoint_whenCodecWritesTooMuch() throws IOException {
+        Path file = Files.createTempFile("queue", ".checkpoint");
+        file.toFile().deleteOnExit();
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(i);
+        }
+        queue.checkpoint(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+
+        queue.offer(-1);
+        try {
+            // writes a long into records sized for an int, for the negative values only
+            queue.checkpoint(file, new RecordCodec<Integer>() {
+                @Override
+                public int recordSize() {
+                    return Integer.BYTES;
+                }
+
+                @Override
+                public void encode(Integer e, ByteBuffer buffer) {
+                    if (e < 0) {
+                        buffer.putLong(e);
+                    } else {
+                        buffer.putInt(e);
+                    }
+                }
+
+                @Override
+                public Integer decode(ByteBuffer buffer) {
+                    return buffer.getInt();
+                }
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+        MostRecentlyInsertedBlockingQueue<Integer> restored = new MostRecentlyInsertedBlockingQueue<>(5);
+        restored.restore(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+        assertArrayEquals(new Integer[]{0, 1, 2}, restored.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldThrowIOException_whenRestoringFromOtherFile() throws IOException {
+        Path file = Files.createTempFile("queue", ".checkpoint");
+        file.toFile().deleteOnExit();
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20});
+
+        exception.expect(IOException.class);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5);
+        queue.restore(file, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC);
+    }
+
+    private static QueueJournal<Integer> openJournal(Path directory, int segmentRecords) throws IOException {
+        return new QueueJournal<>(directory, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC, segmentRecords);
+    }
+
+    private static long countSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".segment")).count();
+        }
+    }
+
+    @Test
+    public void shouldRecoverLiveWindow_whenJournalReopened() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        QueueJournal<Integer> journal = openJournal(directory, 4);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5, journal);
+        for (int i = 0; i < 9; i++) {
+            queue.offer(i);
+        }
+        queue.poll();
+        queue.poll();
+        assertEquals(9, journal.getDurableSequence());
+
+        // reopened without closing, as after a crash
+        QueueJournal<Integer> reopened = openJournal(directory, 4);
+        MostRecentlyInsertedBlockingQueue<Integer> recovered = new MostRecentlyInsertedBlockingQueue<>(5, reopened);
+
+        assertArrayEquals(new Integer[]{6, 7, 8}, recovered.toArray(new Integer[0]));
+        recovered.offer(9);
+        recovered.offerAll(new Integer[]{10, 11, 12}, 0, 3);
+        reopened.close();
+
+        QueueJournal<Integer> smaller = openJournal(directory, 4);
+        assertArrayEquals(new Integer[]{11, 12},
+                new MostRecentlyInsertedBlockingQueue<>(2, smaller).toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldRecoverFromOldestSegment_whenWatermarkIsStale() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        QueueJournal<Integer> journal = openJournal(directory, 4);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5, journal);
+        for (int i = 0; i < 13; i++) {
+            queue.offer(i);
+        }
+        journal.close();
+
+        // the watermark as it was before the consumed segments were deleted, as if its force had been lost
+        try (FileChannel meta = FileChannel.open(directory.resolve("journal.meta"), StandardOpenOption.WRITE)) {
+            meta.write(ByteBuffer.allocate(Long.BYTES), 16);
+        }
+
+        QueueJournal<Integer> reopened = openJournal(directory, 4);
+        assertArrayEquals(new Integer[]{8, 9, 10, 11, 12},
+                new MostRecentlyInsertedBlockingQueue<>(5, reopened).toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldKeepJournalBoundedByCapacity_whenManyItemsOffered() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        QueueJournal<Integer> journal = openJournal(directory, 4);
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5, journal);
+
+        for (int i = 0; i < 1000; i++) {
+            queue.offer(i);
+            if (i % 3 == 0) {
+                queue.poll();
+            }
+        }
+
+        assertTrue(countSegments(directory) <= 3);
+        journal.close();
+    }
+
+    @Test
+    public void shouldMakeEveryOfferDurable_whenProducersOfferConcurrently() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        QueueJournal<Integer> journal = openJournal(directory, 64);
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(1000, journal);
+        List<Thread> producers = new ArrayList<>();
+
+        for (int t = 0; t < 4; t++) {
+            final int producer = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50; i++) {
+                        queue.offer(producer * 1000 + i);
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+
+        assertEquals(200, journal.getDurableSequence());
+        assertTrue(journal.getCommitCount() <= 200);
+
+        QueueJournal<Integer> reopened = openJournal(directory, 64);
+        assertEquals(200, new MostRecentlyInsertedBlockingQueue<>(1000, reopened).size());
+    }
+
+    @Test
+    public void shouldThrowUnsupportedOperationException_whenRemovingFromJournaledQueue() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5,
+                openJournal(directory, QueueJournal.DEFAULT_SEGMENT_RECORDS));
+        queue.offer(1);
+        queue.offer(2);
+
+        exception.expect(UnsupportedOperationException.class);
+        queue.remove(2);
+    }
+
+    @Test
+    public void shouldStreamConsistentSnapshot_whenProducerOffersConcurrently() throws InterruptedException {
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4096);
+        for (int i = 0; i < 5000; i++) {
+            queue.offer(i);
+        }
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 5000; i < 50000; i++) {
+                    queue.offer(i);
+                }
+            }
+        });
+
+        producer.start();
+        for (int round = 0; round < 20; round++) {
+            List<Integer> window = queue.parallelStream().collect(Collectors.toList());
+
+            assertEquals(4096, window.size());
+            for (int i = 1; i < window.size(); i++) {
+                assertEquals(window.get(i - 1) + 1, (int) window.get(i));
+            }
+        }
+        producer.join();
+
+        Spliterator<Integer> spliterator = queue.spliterator();
+        assertEquals(4096, spliterator.getExactSizeIfKnown());
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SUBSIZED | Spliterator.NONNULL));
+    }
+
+    @Test
+    public void shouldReadHistoryFromMappedTier_whenProducersEvictConcurrently() throws Exception {
+        Path file = Files.createTempFile("queue", ".overflow");
+        final MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(100);
+        OverflowTier<Integer> tier = new OverflowTier<>(file, 10000, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC,
+                Runnable::run);
+        queue.setOverflowTier(tier);
+
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            final int first = p * 1000;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = first; i < first + 1000; i++) {
+                        queue.offer(i);
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        List<Integer> history = queue.history(5000);
+        assertEquals(2000, history.size());
+        assertEquals(1900, tier.size());
+        assertEquals(queue.latest(100), history.subList(1900, 2000));
+        assertEquals(IntStream.range(0, 2000).boxed().collect(Collectors.toSet()), new HashSet<>(history));
+
+        queue.offerAll(new Integer[]{-1, -2, -3}, 0, 3);
+        assertEquals(Arrays.asList(-1, -2, -3), queue.history(2003).subList(2000, 2003));
+        Files.delete(file);
+    }
+
+    @Test
+    public void shouldAccessNewestElements_whenRingWrapsAround() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        queue.enableIndex();
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+        }
+
+        Integer[] latest = new Integer[3];
+        assertEquals(2, queue.copyLatest(latest, 2));
+        assertArrayEquals(new Integer[]{4, 5, null}, latest);
+
+        List<Integer> descending = new ArrayList<>();
+        queue.descendingIterator().forEachRemaining(descending::add);
+        assertEquals(Arrays.asList(5, 4, 3, 2), descending);
+
+        assertEquals(5, (int) queue.peekLast());
+        assertEquals(5, (int) queue.pollLast());
+        assertFalse(queue.contains(5));
+        queue.offer(6);
+        assertEquals(Arrays.asList(2, 3, 4, 6), queue.latest(4));
+        assertEquals(6, (int) queue.pollLast());
+        assertEquals(4, (int) queue.peekLast());
+        assertEquals(2, (int) queue.poll());
+        assertEquals(4, (int) queue.pollLast());
+        assertEquals(3, (int) queue.pollLast());
+        assertNull(queue.pollLast());
+        assertNull(queue.peekLast());
+    }
+
+    @Test
+    public void shouldThrowUnsupportedOperationException_whenJournaledQueuePollsLast() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(5,
+                openJournal(directory, QueueJournal.DEFAULT_SEGMENT_RECORDS));
+        queue.offer(1);
+
+        exception.expect(UnsupportedOperationException.class);
+        queue.pollLast();
+    }
+
+    @Test
+    public void shouldReadOnlyNewElements_whenCatchingUpFromSequence() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        Integer[] dst = new Integer[3];
+        queue.offer(0);
+        queue.offer(1);
+
+        CatchUp catchUp = queue.readSince(0, dst);
+        assertEquals(2, catchUp.getCount());
+        assertEquals(2, catchUp.getNextSequence());
+        assertFalse(catchUp.hasGap());
+        assertArrayEquals(new Integer[]{0, 1, null}, dst);
+
+        catchUp = queue.readSince(catchUp.getNextSequence(), dst);
+        assertEquals(0, catchUp.getCount());
+        assertEquals(2, catchUp.getNextSequence());
+
+        for (int i = 2; i < 5; i++) {
+            queue.offer(i);
+        }
+        catchUp = queue.readSince(catchUp.getNextSequence(), dst);
+        assertEquals(3, catchUp.getCount());
+        assertEquals(5, catchUp.getNextSequence());
+        assertArrayEquals(new Integer[]{2, 3, 4}, dst);
+        assertEquals(4, (int) queue.pollLast());
+        assertEquals(5, queue.getNextSequence());
+    }
+
+    @Test
+    public void shouldReportGap_whenEvictionOvertookCursor() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(4);
+        Integer[] dst = new Integer[2];
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+
+        CatchUp catchUp = queue.readSince(3, dst);
+        assertEquals(2, catchUp.getCount());
+        assertEquals(8, catchUp.getNextSequence());
+        assertEquals(3, catchUp.getMissed());
+        assertArrayEquals(new Integer[]{6, 7}, dst);
+
+        queue.remove(9);
+        queue.offerAll(new Integer[]{10, 11, 12, 13, 14, 15}, 0, 6);
+        catchUp = queue.readSince(catchUp.getNextSequence(), dst);
+        // 8 was evicted and 9 removed, while 10 and 11 never entered the window and took no sequence
+        assertEquals(2, catchUp.getCount());
+        assertEquals(12, catchUp.getNextSequence());
+        assertEquals(2, catchUp.getMissed());
+        assertArrayEquals(new Integer[]{12, 13}, dst);
+
+        queue.clear();
+        catchUp = queue.readSince(catchUp.getNextSequence(), dst);
+        assertEquals(0, catchUp.getCount());
+        assertEquals(14, catchUp.getNextSequence());
+        assertEquals(2, catchUp.getMissed());
+    }
+
+    @Test
+    public void shouldNumberElementsLikeJournal_whenJournaledQueueIsReopened() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3,
+                openJournal(directory, QueueJournal.DEFAULT_SEGMENT_RECORDS));
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        MostRecentlyInsertedBlockingQueue<Integer> reopened = new MostRecentlyInsertedBlockingQueue<>(3,
+                openJournal(directory, QueueJournal.DEFAULT_SEGMENT_RECORDS));
+        Integer[] dst = new Integer[3];
+        CatchUp catchUp = reopened.readSince(3, dst);
+        assertEquals(2, catchUp.getCount());
+        assertArrayEquals(new Integer[]{3, 4, null}, dst);
+        assertEquals(5, reopened.getNextSequence());
+    }
+
+    @Test
+    public void shouldNotSkipUnreadElements_whenDestinationIsEmpty() {
+        MostRecentlyInsertedBlockingQueue<Integer> queue = new MostRecentlyInsertedBlockingQueue<>(3);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        CatchUp catchUp = queue.readSince(0, new Integer[0]);
+        assertEquals(0, catchUp.getCount());
+        assertEquals(2, catchUp.getNextSequence());
+        assertEquals(2, catchUp.getMissed());
+
+        Integer[] dst = new Integer[3];
+        catchUp = queue.readSince(catchUp.getNextSequence(), dst);
+        assertEquals(3, catchUp.getCount());
+        assertFalse(catchUp.hasGap());
+        assertArrayEquals(new Integer[]{2, 3, 4}, dst);
+    }
+}
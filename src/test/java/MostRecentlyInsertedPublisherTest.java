@@ -0,0 +1,192 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MostRecentlyInsertedPublisherTest {
+
+    private final static int CAPACITY = 3;
+
+    private final static Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private MostRecentlyInsertedPublisher<Integer> publisher;
+
+    @Before
+    public void setUp() {
+        publisher = new MostRecentlyInsertedPublisher<>(CAPACITY, DIRECT);
+    }
+
+    static class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        final List<Integer> items = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+    }
+
+    @Test
+    public void shouldDeliverOnlyRequestedItems() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        publisher.submit(1);
+        publisher.submit(2);
+        assertEquals(Collections.emptyList(), subscriber.items);
+
+        subscriber.subscription.request(1);
+        assertEquals(Arrays.asList(1), subscriber.items);
+
+        publisher.submit(3);
+        subscriber.subscription.request(5);
+        publisher.submit(4);
+        assertEquals(Arrays.asList(1, 2, 3, 4), subscriber.items);
+    }
+
+    @Test
+    public void shouldEvictOldestItems_whenSubscriberFallsBehind() {
+        RecordingSubscriber slow = new RecordingSubscriber();
+        RecordingSubscriber fast = new RecordingSubscriber();
+        publisher.subscribe(slow);
+        publisher.subscribe(fast);
+        fast.subscription.request(Long.MAX_VALUE);
+
+        for (int i = 0; i < 10; i++) {
+            publisher.submit(i);
+        }
+
+        slow.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList(7, 8, 9), slow.items);
+        assertEquals(10, fast.items.size());
+    }
+
+    @Test
+    public void shouldCompleteAfterBufferedItems_whenClosed() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.submit(1);
+        publisher.close();
+
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(1);
+        assertEquals(Arrays.asList(1), subscriber.items);
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getNumberOfSubscribers());
+    }
+
+    @Test
+    public void shouldSignalError_whenClosedExceptionally() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.submit(1);
+
+        IllegalStateException error = new IllegalStateException();
+        publisher.closeExceptionally(error);
+
+        assertSame(error, subscriber.error);
+        assertEquals(Collections.emptyList(), subscriber.items);
+    }
+
+    @Test
+    public void shouldSignalIllegalArgumentException_whenRequestNotPositive() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void shouldStopDelivering_whenCancelled() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        publisher.submit(1);
+        subscriber.subscription.cancel();
+        publisher.submit(2);
+
+        assertEquals(Arrays.asList(1), subscriber.items);
+        assertEquals(0, publisher.getNumberOfSubscribers());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldThrowIllegalStateException_whenSubmitAfterClose() {
+        publisher.close();
+        publisher.submit(1);
+    }
+
+    @Test
+    public void shouldDeliverInOrderWithoutDuplicates_whenDrainedOnPool() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            MostRecentlyInsertedPublisher<Integer> pooled = new MostRecentlyInsertedPublisher<>(16, pool);
+            RecordingSubscriber subscriber = new RecordingSubscriber() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    super.onSubscribe(subscription);
+                    subscription.request(Long.MAX_VALUE);
+                }
+            };
+            pooled.subscribe(subscriber);
+            while (pooled.getNumberOfSubscribers() == 0 || subscriber.subscription == null) {
+                Thread.sleep(1);
+            }
+
+            for (int i = 0; i < 10000; i++) {
+                pooled.submit(i);
+            }
+            pooled.close();
+
+            assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+            assertTrue(subscriber.completed);
+
+            List<Integer> items = subscriber.items;
+            for (int i = 1; i < items.size(); i++) {
+                assertTrue(items.get(i - 1) < items.get(i));
+            }
+            assertEquals(Integer.valueOf(9999), items.get(items.size() - 1));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -1,4 +1,16 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
 
 public class MostRecentlyInsertedQueueTest extends QueuesTest {
 
@@ -7,4 +19,213 @@ public class MostRecentlyInsertedQueueTest extends QueuesTest {
         return new MostRecentlyInsertedQueue<Integer>(capacity);
     }
 
+    @Test
+    public void shouldKeepNewestItems_whenOfferAllOverflows() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(3);
+        queue.offer(0);
+        queue.offer(1);
+
+        queue.offerAll(new Integer[]{2, 3, 4, 5}, 1, 2);
+        assertArrayEquals(new Integer[]{1, 3, 4}, queue.toArray(new Integer[0]));
+
+        queue.offerAll(new Integer[]{5, 6, 7, 8, 9}, 0, 5);
+        assertArrayEquals(new Integer[]{7, 8, 9}, queue.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void shouldPollIntoArray_whenRingWrapsAround() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(3);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        Integer[] items = new Integer[4];
+        assertEquals(3, queue.pollInto(items, 1, 3));
+
+        assertArrayEquals(new Integer[]{null, 2, 3, 4}, items);
+        assertEquals(0, queue.size());
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void shouldDiscardExpiredItems_whenMaxAgeElapsed() {
+        final long[] now = {0};
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(4, 10, TimeUnit.NANOSECONDS,
+                new LongSupplier() {
+                    @Override
+                    public long getAsLong() {
+                        return now[0];
+                    }
+                });
+
+        queue.offer(0);
+        now[0] = 5;
+        queue.offer(1);
+        queue.offer(2);
+
+        now[0] = 10;
+        assertEquals(Integer.valueOf(1), queue.peek());
+        assertEquals(2, queue.size());
+
+        now[0] = 15;
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void shouldEvictOnlyExpiredItems_whenOfferToFullQueueWithExpiredHead() {
+        final long[] now = {0};
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(3, 10, TimeUnit.NANOSECONDS,
+                new LongSupplier() {
+                    @Override
+                    public long getAsLong() {
+                        return now[0];
+                    }
+                });
+
+        queue.offer(0);
+        now[0] = 5;
+        queue.offer(1);
+        queue.offer(2);
+
+        now[0] = 12;
+        queue.offer(3);
+
+        assertArrayEquals(new Integer[]{1, 2, 3}, queue.toArray(new Integer[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentException_whenMaxAgeNotPositive() {
+        new MostRecentlyInsertedQueue<Integer>(3, 0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldCountOffersPollsAndEvictions_whenMetricsEnabled() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(3);
+        queue.offer(-1);
+
+        QueueMetrics metrics = queue.enableMetrics("plain-metrics-test");
+        try {
+            for (int i = 0; i < 4; i++) {
+                queue.offer(i);
+            }
+            queue.offerAll(new Integer[]{4, 5}, 0, 2);
+            queue.poll();
+            queue.pollInto(new Integer[3], 0, 3);
+
+            assertEquals(6, metrics.getOfferCount());
+            assertEquals(3, metrics.getPollCount());
+            assertEquals(4, metrics.getEvictionCount());
+            assertEquals(3, metrics.getHighWaterMark());
+            assertEquals(0, metrics.getSize());
+        } finally {
+            queue.disableMetrics();
+        }
+        assertNull(queue.getMetrics());
+    }
+
+    @Test
+    public void shouldKeepNewestItems_whenCapacityChanged() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(4);
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+        }
+
+        queue.setCapacity(3);
+        assertEquals(3, queue.capacity());
+        assertArrayEquals(new Integer[]{3, 4, 5}, queue.toArray(new Integer[0]));
+
+        queue.setCapacity(5);
+        queue.offer(6);
+        queue.offer(7);
+        queue.offer(8);
+        assertArrayEquals(new Integer[]{4, 5, 6, 7, 8}, queue.toArray(new Integer[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentException_whenCapacityChangedToZero() {
+        new MostRecentlyInsertedQueue<Integer>(3).setCapacity(0);
+    }
+
+    @Test
+    public void shouldSplitWindowInOrder_whenRingWrapsAround() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(1000);
+        for (int i = 0; i < 1700; i++) {
+            queue.offer(i);
+        }
+
+        Spliterator<Integer> spliterator = queue.spliterator();
+        assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED
+                | Spliterator.NONNULL));
+        Spliterator<Integer> prefix = spliterator.trySplit();
+        assertEquals(500, prefix.estimateSize());
+        assertEquals(500, spliterator.estimateSize());
+
+        assertEquals(IntStream.range(700, 1700).boxed().collect(Collectors.toList()),
+                queue.parallelStream().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldReadHistoryAcrossTiers_whenEvictedElementsAreSpilled() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(3);
+        queue.setOverflowTier(new OverflowTier<>(4, MappedMostRecentlyInsertedQueueTest.INTEGER_CODEC, Runnable::run));
+
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        queue.offerAll(new Integer[]{5, 6, 7, 8}, 0, 4);
+
+        assertEquals(Arrays.asList(6, 7, 8), queue.history(3));
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8), queue.history(6));
+        assertEquals(Arrays.asList(2, 3, 4, 5, 6, 7, 8), queue.history(10));
+
+        queue.setCapacity(1);
+        assertEquals(Arrays.asList(4, 5, 6, 7, 8), queue.history(10));
+        assertEquals(4, queue.getOverflowTier().size());
+    }
+
+    @Test
+    public void shouldDropEvictedElements_whenNoOverflowTierIsSet() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(2);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+
+        assertNull(queue.getOverflowTier());
+        assertEquals(Arrays.asList(3, 4), queue.history(5));
+    }
+
+    @Test
+    public void shouldAccessNewestElements_whenRingWrapsAround() {
+        MostRecentlyInsertedQueue<Integer> queue = new MostRecentlyInsertedQueue<>(4);
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i);
+        }
+
+        Integer[] latest = new Integer[5];
+        assertEquals(3, queue.copyLatest(latest, 3));
+        assertArrayEquals(new Integer[]{3, 4, 5, null, null}, latest);
+        assertEquals(4, queue.copyLatest(latest, 5));
+        assertArrayEquals(new Integer[]{2, 3, 4, 5, null}, latest);
+
+        List<Integer> descending = new ArrayList<>();
+        queue.descendingIterator().forEachRemaining(descending::add);
+        assertEquals(Arrays.asList(5, 4, 3, 2), descending);
+
+        assertEquals(5, (int) queue.peekLast());
+        assertEquals(5, (int) queue.pollLast());
+        assertEquals(4, (int) queue.pollLast());
+        queue.offer(6);
+        assertArrayEquals(new Integer[]{2, 3, 6}, queue.toArray(new Integer[0]));
+        assertEquals(6, (int) queue.pollLast());
+        assertEquals(3, (int) queue.pollLast());
+        assertEquals(2, (int) queue.pollLast());
+        assertNull(queue.pollLast());
+        assertNull(queue.peekLast());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldThrowIndexOutOfBoundsException_whenCopyingMoreThanArrayHolds() {
+        new MostRecentlyInsertedQueue<Integer>(3).copyLatest(new Integer[2], 3);
+    }
 }
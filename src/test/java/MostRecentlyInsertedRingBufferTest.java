@@ -0,0 +1,120 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class MostRecentlyInsertedRingBufferTest {
+
+    private final static int CAPACITY = 4;
+
+    static class Event {
+        long value;
+    }
+
+    private final static Supplier<Event> FACTORY = new Supplier<Event>() {
+        @Override
+        public Event get() {
+            return new Event();
+        }
+    };
+
+    private final static BiConsumer<Event, Event> COPIER = new BiConsumer<Event, Event>() {
+        @Override
+        public void accept(Event from, Event to) {
+            to.value = from.value;
+        }
+    };
+
+    private MostRecentlyInsertedRingBuffer<Event> ring;
+    private Event target;
+
+    @Before
+    public void setUp() {
+        ring = new MostRecentlyInsertedRingBuffer<>(CAPACITY, FACTORY);
+        target = new Event();
+    }
+
+    private void publish(long value) {
+        long sequence = ring.next();
+        ring.get(sequence).value = value;
+        ring.publish(sequence);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldThrowIllegalArgumentException_whenCapacityLowerZero() {
+        new MostRecentlyInsertedRingBuffer<>(-1, FACTORY);
+    }
+
+    @Test
+    public void shouldReturnMinusOne_whenPollEmptyRing() {
+        assertEquals(-1, ring.poll(target, COPIER));
+    }
+
+    @Test
+    public void shouldPollEventsInPublishOrder() {
+        publish(10);
+        publish(20);
+
+        assertEquals(0, ring.poll(target, COPIER));
+        assertEquals(10, target.value);
+        assertEquals(1, ring.poll(target, COPIER));
+        assertEquals(20, target.value);
+        assertEquals(-1, ring.poll(target, COPIER));
+    }
+
+    @Test
+    public void shouldNotPollClaimedEvent_untilPublished() {
+        long sequence = ring.next();
+        ring.get(sequence).value = 1;
+
+        assertEquals(-1, ring.poll(target, COPIER));
+
+        ring.publish(sequence);
+        assertEquals(sequence, ring.poll(target, COPIER));
+    }
+
+    @Test
+    public void shouldReuseSlotEvents_whenRingWrapsAround() {
+        Event first = ring.get(0);
+
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            publish(i);
+        }
+
+        assertSame(first, ring.get(CAPACITY));
+    }
+
+    @Test
+    public void shouldSkipEvictedEvents_whenConsumerLapped() {
+        for (int i = 0; i < CAPACITY * 2 + 1; i++) {
+            publish(i);
+        }
+
+        assertEquals(CAPACITY + 1, ring.poll(target, COPIER));
+        assertEquals(CAPACITY + 1, target.value);
+        assertEquals(CAPACITY + 1, ring.lostCount());
+        assertEquals(CAPACITY - 1, ring.size());
+    }
+
+    @Test
+    public void shouldReadBySequence_withoutConsuming() {
+        publish(7);
+
+        assertTrue(ring.read(0, target, COPIER));
+        assertEquals(7, target.value);
+        assertFalse(ring.read(1, target, COPIER));
+        assertEquals(0, ring.getTakeSequence());
+    }
+
+    @Test
+    public void shouldNotReadOverwrittenSequence() {
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            publish(i);
+        }
+
+        assertFalse(ring.read(0, target, COPIER));
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+public class StripedMostRecentlyInsertedQueueTest extends QueuesTest {
+
+    private final static int THREADS_NUMBERS = 8;
+    private final static int NUMBER_ITEMS = 100;
+    private final static int CAPACITY = 40;
+
+    @Override
+    Queue<Integer> initQueue(int capacity) {
+        // a single stripe behaves exactly like the single-ring queues
+        return new StripedMostRecentlyInsertedQueue<Integer>(capacity, 1);
+    }
+
+    @Test
+    public void shouldKeepOverallBound_whenThreadsOfferItems() throws InterruptedException {
+        final StripedMostRecentlyInsertedQueue<Integer> queue = new StripedMostRecentlyInsertedQueue<>(CAPACITY, 4);
+        Thread[] threads = new Thread[THREADS_NUMBERS];
+
+        for (int i = 0; i < THREADS_NUMBERS; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < NUMBER_ITEMS; j++) queue.offer(j);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(queue.size() <= CAPACITY);
+        assertEquals(queue.size(), queue.drainTo(new ArrayList<Integer>()));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldMergeStripesInInsertionOrder_whenDrained() throws InterruptedException {
+        final StripedMostRecentlyInsertedQueue<Integer> queue = new StripedMostRecentlyInsertedQueue<>(CAPACITY, 4);
+
+        // consecutive threads land on different stripes
+        for (int i = 0; i < 4; i++) {
+            final int item = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    queue.offer(item);
+                    queue.offer(item + 10);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+
+        assertArrayEquals(new Integer[]{0, 10, 1, 11, 2, 12, 3, 13}, queue.toArray(new Integer[0]));
+
+        List<Integer> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        assertEquals(Arrays.asList(0, 10, 1, 11, 2, 12, 3, 13), drained);
+    }
+
+    @Test
+    public void shouldKeepOnlyOwnStripe_whenSingleProducerUsesDefaultStripes() {
+        int stripes = Runtime.getRuntime().availableProcessors();
+        StripedMostRecentlyInsertedQueue<Integer> queue = new StripedMostRecentlyInsertedQueue<>(stripes * 8);
+
+        for (int i = 0; i < stripes * 8; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(8, queue.size());
+        assertEquals(Integer.valueOf(stripes * 8 - 8), queue.peek());
+    }
+
+    @Test
+    public void shouldEvictWithinStripe_whenSingleProducerFillsItsStripe() {
+        StripedMostRecentlyInsertedQueue<Integer> queue = new StripedMostRecentlyInsertedQueue<>(4, 2);
+
+        for (int i = 0; i < 4; i++) {
+            queue.offer(i);
+        }
+
+        assertEquals(2, queue.size());
+        assertEquals(Integer.valueOf(2), queue.poll());
+    }
+}
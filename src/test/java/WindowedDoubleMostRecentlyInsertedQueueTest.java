@@ -0,0 +1,119 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WindowedDoubleMostRecentlyInsertedQueueTest {
+
+    private final static int CAPACITY = 5;
+    private final static double DELTA = 1e-9;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void shouldAggregateOnlyCurrentWindow_whenValuesEvicted() {
+        WindowedDoubleMostRecentlyInsertedQueue queue = new WindowedDoubleMostRecentlyInsertedQueue(3);
+        queue.offer(10);
+        queue.offer(1);
+        queue.offer(4);
+        queue.offer(7);
+
+        assertEquals(12, queue.sum(), DELTA);
+        assertEquals(4, queue.mean(), DELTA);
+        assertEquals(6, queue.variance(), DELTA);
+        assertEquals(1, queue.min(), 0);
+        assertEquals(7, queue.max(), 0);
+
+        assertEquals(1, queue.poll(), 0);
+        assertEquals(4, queue.min(), 0);
+        assertEquals(5.5, queue.mean(), DELTA);
+        assertEquals(2.25, queue.variance(), DELTA);
+    }
+
+    @Test
+    public void shouldResetAggregates_whenQueueDrainedOrCleared() {
+        WindowedDoubleMostRecentlyInsertedQueue queue = new WindowedDoubleMostRecentlyInsertedQueue(CAPACITY);
+        queue.offer(1e17);
+        queue.offer(3);
+
+        double[] dst = new double[CAPACITY];
+        assertEquals(2, queue.drainTo(dst));
+        assertEquals(0, queue.sum(), 0);
+        assertTrue(Double.isNaN(queue.mean()));
+        assertTrue(Double.isNaN(queue.variance()));
+
+        queue.offer(2);
+        queue.clear();
+        queue.offer(5);
+        assertEquals(5, queue.sum(), 0);
+        assertEquals(5, queue.min(), 0);
+        assertEquals(5, queue.max(), 0);
+        assertEquals(0, queue.variance(), 0);
+    }
+
+    @Test
+    public void shouldKeepSumExact_whenLargeValuesLeaveWindow() {
+        WindowedDoubleMostRecentlyInsertedQueue queue = new WindowedDoubleMostRecentlyInsertedQueue(3);
+        queue.offer(1e17);
+        queue.offer(1);
+        queue.offer(1);
+        queue.offer(1);
+
+        assertEquals(3, queue.sum(), 0);
+        assertEquals(0, queue.variance(), DELTA);
+    }
+
+    @Test
+    public void shouldThrowNoSuchElementException_whenMinOfEmptyQueue() {
+        exception.expect(NoSuchElementException.class);
+        new WindowedDoubleMostRecentlyInsertedQueue(CAPACITY).min();
+    }
+
+    @Test
+    public void shouldMatchRecomputedAggregates_whenRandomlyOfferedAndPolled() {
+        WindowedDoubleMostRecentlyInsertedQueue queue = new WindowedDoubleMostRecentlyInsertedQueue(CAPACITY);
+        Random random = new Random(42);
+        double[] window = new double[CAPACITY];
+
+        for (int i = 0; i < 10000; i++) {
+            if (random.nextInt(4) == 0) {
+                queue.pollOrDefault(0);
+            } else {
+                queue.offer(random.nextInt(100) - 50 + random.nextDouble());
+            }
+
+            if (queue.isEmpty()) {
+                continue;
+            }
+
+            String values = queue.toString().trim();
+            int size = 0;
+            for (String value : values.split(" ")) {
+                window[size++] = Double.parseDouble(value);
+            }
+            assertEquals(queue.size(), size);
+
+            double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int j = 0; j < size; j++) {
+                sum += window[j];
+                min = Math.min(min, window[j]);
+                max = Math.max(max, window[j]);
+            }
+            double mean = sum / size, squaredDeviations = 0;
+            for (int j = 0; j < size; j++) {
+                squaredDeviations += (window[j] - mean) * (window[j] - mean);
+            }
+
+            assertEquals(sum, queue.sum(), DELTA);
+            assertEquals(mean, queue.mean(), DELTA);
+            assertEquals(squaredDeviations / size, queue.variance(), 1e-6);
+            assertEquals(min, queue.min(), 0);
+            assertEquals(max, queue.max(), 0);
+        }
+    }
+}